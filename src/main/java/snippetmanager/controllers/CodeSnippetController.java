@@ -2,6 +2,10 @@ package snippetmanager.controllers;
 
 import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -12,21 +16,31 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 import snippetmanager.model.dtos.AllSnippetsSendDto;
+import snippetmanager.model.dtos.CompileStatusDto;
 import snippetmanager.model.dtos.LanguagesDto;
 import snippetmanager.model.dtos.SnippetReceivedDto;
+import snippetmanager.model.dtos.SnippetRevisionDto;
 import snippetmanager.model.dtos.SnippetSendDto;
 import snippetmanager.model.dtos.TestCaseDto;
+import snippetmanager.model.dtos.TestResultDto;
+import snippetmanager.model.dtos.TestSuiteResultDto;
 import snippetmanager.services.CodeSnippetService;
+import snippetmanager.util.enums.SnippetView;
 
+// Blocking stack; the reactive profile swaps in ReactiveCodeSnippetController
 @RestController
 @RequestMapping("/api/snippet")
+@Profile("!reactive")
 public class CodeSnippetController {
 
+  static final String TEST_RESULT_CACHE_HEADER = "X-Test-Result-Cache";
+
   @Autowired private CodeSnippetService codeSnippetService;
 
   private String getUserId() {
@@ -63,23 +77,52 @@ public class CodeSnippetController {
   }
 
   // GET http://localhost:8080/api/snippet/{snippetId}
+  // Answers 304 when If-None-Match still matches, without downloading the content.
   @GetMapping("/{assetId}")
-  public ResponseEntity<SnippetSendDto> getSnippet(@PathVariable String assetId) {
-    return ResponseEntity.ok(codeSnippetService.getSnippet(assetId, getUserId()));
+  public ResponseEntity<SnippetSendDto> getSnippet(
+      @PathVariable String assetId,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    CodeSnippetService.Tagged<SnippetSendDto> snippet =
+        codeSnippetService.getSnippet(assetId, getUserId(), ifNoneMatch);
+    if (snippet.body() == null) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snippet.etag()).build();
+    }
+    return ResponseEntity.ok().eTag(snippet.etag()).body(snippet.body());
+  }
+
+  // GET http://localhost:8080/api/snippet/{snippetId}/compile-status
+  @GetMapping("/{assetId}/compile-status")
+  public ResponseEntity<CompileStatusDto> getCompileStatus(@PathVariable String assetId) {
+    return ResponseEntity.ok(codeSnippetService.getCompileStatus(assetId));
+  }
+
+  // GET http://localhost:8080/api/snippet/{snippetId}/revisions
+  @GetMapping("/{assetId}/revisions")
+  public ResponseEntity<List<SnippetRevisionDto>> getRevisions(@PathVariable String assetId) {
+    return ResponseEntity.ok(codeSnippetService.getRevisions(assetId));
   }
 
-  // GET http://localhost:8080/api/snippet/
+  // GET http://localhost:8080/api/snippet/{snippetId}/revisions/{revision}
+  @GetMapping(value = "/{assetId}/revisions/{revision}", produces = MediaType.TEXT_PLAIN_VALUE)
+  public ResponseEntity<String> getRevision(
+      @PathVariable String assetId, @PathVariable int revision) {
+    return ResponseEntity.ok(codeSnippetService.getRevisionContent(assetId, revision));
+  }
+
+  // GET http://localhost:8080/api/snippet/?view=summary
+  // The summary view leaves the content out, so the asset service is not called.
+  // Pages are capped at snippet.listing.max-page-size; follow nextCursor for the rest.
   @GetMapping
   public ResponseEntity<AllSnippetsSendDto> getAllSnippets(
       @RequestParam(value = "from", required = false) Integer from,
-      @RequestParam(value = "to", required = false) Integer to) {
-    if (from == null) {
-      from = 0;
-    }
-    if (to == null) {
-      to = Integer.MAX_VALUE;
+      @RequestParam(value = "to", required = false) Integer to,
+      @RequestParam(value = "cursor", required = false) String cursor,
+      @RequestParam(value = "view", required = false, defaultValue = "full") String view) {
+    SnippetView snippetView = SnippetView.valueOf(view.toUpperCase());
+    if (cursor != null) {
+      return ResponseEntity.ok(codeSnippetService.getAllSnippets(cursor, getUserId(), snippetView));
     }
-    return ResponseEntity.ok(codeSnippetService.getAllSnippets(from, to, getUserId()));
+    return ResponseEntity.ok(codeSnippetService.getAllSnippets(from, to, getUserId(), snippetView));
   }
 
   // PUT http://localhost:8080/api/snippet/{snippetId}
@@ -118,9 +161,18 @@ public class CodeSnippetController {
     return ResponseEntity.ok(codeSnippetService.deleteTestCases(testId));
   }
 
+  // X-Test-Result-Cache says whether the result was answered without running the test again
   @PostMapping("testCases/test/{assetId}")
   public ResponseEntity<String> testSnippet(
       @PathVariable String assetId, @RequestBody TestCaseDto testCase) {
-    return ResponseEntity.ok(codeSnippetService.test(assetId, testCase));
+    TestResultDto testResult = codeSnippetService.test(assetId, testCase);
+    return ResponseEntity.ok()
+        .header(TEST_RESULT_CACHE_HEADER, testResult.isCached() ? "HIT" : "MISS")
+        .body(testResult.getResult());
+  }
+
+  @PostMapping("testCases/test/{assetId}/all")
+  public ResponseEntity<TestSuiteResultDto> testAllSnippetCases(@PathVariable String assetId) {
+    return ResponseEntity.ok(codeSnippetService.runAllTests(assetId));
   }
 }
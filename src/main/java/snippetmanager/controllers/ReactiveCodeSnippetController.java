@@ -0,0 +1,212 @@
+package snippetmanager.controllers;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import snippetmanager.model.dtos.AllSnippetsSendDto;
+import snippetmanager.model.dtos.CompileStatusDto;
+import snippetmanager.model.dtos.LanguagesDto;
+import snippetmanager.model.dtos.SnippetReceivedDto;
+import snippetmanager.model.dtos.SnippetRevisionDto;
+import snippetmanager.model.dtos.SnippetSendDto;
+import snippetmanager.model.dtos.TestCaseDto;
+import snippetmanager.model.dtos.TestSuiteResultDto;
+import snippetmanager.services.CodeSnippetService;
+import snippetmanager.services.ReactiveCodeSnippetService;
+import snippetmanager.util.PageCursor;
+import snippetmanager.util.enums.SnippetView;
+import snippetmanager.webservice.WebClientUtility;
+
+// Same API as CodeSnippetController, but every handler returns a Mono so no request thread waits
+// on a downstream call. Enabled with the reactive profile.
+@RestController
+@RequestMapping("/api/snippet")
+@Profile("reactive")
+public class ReactiveCodeSnippetController {
+
+  @Autowired private ReactiveCodeSnippetService reactiveCodeSnippetService;
+
+  @Autowired private CodeSnippetService codeSnippetService;
+
+  private Jwt getJwt() {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    return (Jwt) authentication.getPrincipal();
+  }
+
+  private String getUserId() {
+    String userId = getJwt().getClaimAsString("sub");
+    int position = userId.indexOf("|");
+
+    if (position != -1) {
+      userId = userId.substring(position + 1);
+    }
+
+    return userId;
+  }
+
+  // Downstream calls may be sent from a Netty thread, so the token travels in the Reactor context
+  private <T> Mono<T> withToken(Mono<T> response) {
+    return response.contextWrite(
+        Context.of(WebClientUtility.TOKEN_CONTEXT_KEY, getJwt().getTokenValue()));
+  }
+
+  // PUT http://localhost:8080/api/snippet/
+  @PutMapping
+  public Mono<ResponseEntity<String>> createSnippet(
+      @RequestParam("content") MultipartFile file,
+      @RequestParam("name") String fileName,
+      @RequestParam("language") String language,
+      @RequestParam("extension") String extension) {
+    String version = language.substring(language.lastIndexOf(" ") + 1);
+    language = language.substring(0, language.lastIndexOf(" "));
+    SnippetReceivedDto snippet =
+        SnippetReceivedDto.builder()
+            .content(file)
+            .language(language)
+            .version(version)
+            .extension(extension)
+            .name(fileName)
+            .build();
+    return withToken(
+        reactiveCodeSnippetService.createSnippet(snippet, getUserId()).map(ResponseEntity::ok));
+  }
+
+  // GET http://localhost:8080/api/snippet/{snippetId}
+  @GetMapping("/{assetId}")
+  public Mono<ResponseEntity<SnippetSendDto>> getSnippet(
+      @PathVariable String assetId,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    Mono<ResponseEntity<SnippetSendDto>> response =
+        reactiveCodeSnippetService
+            .getSnippet(assetId, getUserId(), ifNoneMatch)
+            .map(
+                snippet ->
+                    snippet.body() == null
+                        ? ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                            .eTag(snippet.etag())
+                            .<SnippetSendDto>build()
+                        : ResponseEntity.ok().eTag(snippet.etag()).body(snippet.body()));
+    return withToken(response);
+  }
+
+  // GET http://localhost:8080/api/snippet/?view=summary
+  @GetMapping
+  public Mono<ResponseEntity<AllSnippetsSendDto>> getAllSnippets(
+      @RequestParam(value = "from", required = false) Integer from,
+      @RequestParam(value = "to", required = false) Integer to,
+      @RequestParam(value = "cursor", required = false) String cursor,
+      @RequestParam(value = "view", required = false, defaultValue = "full") String view) {
+    SnippetView snippetView = SnippetView.valueOf(view.toUpperCase());
+    if (cursor != null) {
+      PageCursor pageCursor = PageCursor.decode(cursor);
+      from = pageCursor.offset();
+      to = pageCursor.offset() + pageCursor.pageSize();
+    }
+    return withToken(
+        reactiveCodeSnippetService
+            .getAllSnippets(from, to, getUserId(), snippetView)
+            .map(ResponseEntity::ok));
+  }
+
+  // GET http://localhost:8080/api/snippet/{snippetId}/compile-status
+  @GetMapping("/{assetId}/compile-status")
+  public Mono<ResponseEntity<CompileStatusDto>> getCompileStatus(@PathVariable String assetId) {
+    return offload(() -> codeSnippetService.getCompileStatus(assetId));
+  }
+
+  // GET http://localhost:8080/api/snippet/{snippetId}/revisions
+  @GetMapping("/{assetId}/revisions")
+  public Mono<ResponseEntity<List<SnippetRevisionDto>>> getRevisions(
+      @PathVariable String assetId) {
+    return offload(() -> codeSnippetService.getRevisions(assetId));
+  }
+
+  // GET http://localhost:8080/api/snippet/{snippetId}/revisions/{revision}
+  @GetMapping(value = "/{assetId}/revisions/{revision}", produces = MediaType.TEXT_PLAIN_VALUE)
+  public Mono<ResponseEntity<String>> getRevision(
+      @PathVariable String assetId, @PathVariable int revision) {
+    return offload(() -> codeSnippetService.getRevisionContent(assetId, revision));
+  }
+
+  // PUT http://localhost:8080/api/snippet/{snippetId}
+  @PutMapping("/{snippetId}")
+  public Mono<ResponseEntity<String>> updateSnippet(
+      @PathVariable String snippetId, @RequestParam("content") MultipartFile file) {
+    SnippetReceivedDto snippet = SnippetReceivedDto.builder().content(file).build();
+    String userId = getUserId();
+    return offload(() -> codeSnippetService.updateSnippet(snippetId, userId, snippet));
+  }
+
+  // DELETE http://localhost:8080/api/snippet/{snippetId}
+  @DeleteMapping("/{snippetId}")
+  public Mono<ResponseEntity<String>> deleteSnippet(@PathVariable String snippetId) {
+    return offload(() -> codeSnippetService.deleteSnippet(snippetId));
+  }
+
+  @GetMapping("/languages")
+  public Mono<ResponseEntity<List<LanguagesDto>>> getLanguages() {
+    return offload(() -> codeSnippetService.getLanguages());
+  }
+
+  @GetMapping("testCases/{assetId}")
+  public Mono<ResponseEntity<List<TestCaseDto>>> getTestCases(@PathVariable String assetId) {
+    return offload(() -> codeSnippetService.getTestCases(assetId));
+  }
+
+  @PostMapping("testCases/{assetId}")
+  public Mono<ResponseEntity<TestCaseDto>> postTestCases(
+      @PathVariable String assetId, @RequestBody TestCaseDto testCases) {
+    return offload(() -> codeSnippetService.postTestCase(assetId, testCases));
+  }
+
+  @DeleteMapping("testCases/{testId}")
+  public Mono<ResponseEntity<String>> deleteTestCase(@PathVariable String testId) {
+    return offload(() -> codeSnippetService.deleteTestCases(testId));
+  }
+
+  @PostMapping("testCases/test/{assetId}")
+  public Mono<ResponseEntity<String>> testSnippet(
+      @PathVariable String assetId, @RequestBody TestCaseDto testCase) {
+    return reactiveCodeSnippetService
+        .offload(() -> codeSnippetService.test(assetId, testCase))
+        .map(
+            testResult ->
+                ResponseEntity.ok()
+                    .header(
+                        CodeSnippetController.TEST_RESULT_CACHE_HEADER,
+                        testResult.isCached() ? "HIT" : "MISS")
+                    .body(testResult.getResult()));
+  }
+
+  @PostMapping("testCases/test/{assetId}/all")
+  public Mono<ResponseEntity<TestSuiteResultDto>> testAllSnippetCases(
+      @PathVariable String assetId) {
+    return offload(() -> codeSnippetService.runAllTests(assetId));
+  }
+
+  // Writes and test runs still go through the blocking service, but off the request thread
+  private <T> Mono<ResponseEntity<T>> offload(Callable<T> work) {
+    return reactiveCodeSnippetService.offload(work).map(ResponseEntity::ok);
+  }
+}
@@ -0,0 +1,107 @@
+package snippetmanager.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import snippetmanager.services.CodeSnippetService;
+import snippetmanager.util.PageCursor;
+import snippetmanager.util.enums.SnippetView;
+
+// Streaming endpoints, already written asynchronously, so they serve both the blocking and the
+// reactive profile
+@RestController
+@RequestMapping("/api/snippet")
+public class SnippetStreamController {
+
+  private static final String NDJSON = "application/x-ndjson";
+
+  @Autowired private CodeSnippetService codeSnippetService;
+
+  @Autowired private ObjectMapper objectMapper;
+
+  private String getUserId() {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    Jwt jwt = (Jwt) authentication.getPrincipal();
+    String userId = jwt.getClaimAsString("sub");
+    int position = userId.indexOf("|");
+
+    if (position != -1) {
+      userId = userId.substring(position + 1);
+    }
+
+    return userId;
+  }
+
+  // GET http://localhost:8080/api/snippet/{snippetId}/content
+  // The content as plain text, streamed from the asset service as it arrives.
+  @GetMapping(value = "/{assetId}/content", produces = MediaType.TEXT_PLAIN_VALUE)
+  public ResponseEntity<StreamingResponseBody> getSnippetContent(
+      @PathVariable String assetId,
+      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+    CodeSnippetService.Tagged<StreamingResponseBody> content =
+        codeSnippetService.getSnippetContent(assetId, getUserId(), ifNoneMatch);
+    if (content.body() == null) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(content.etag()).build();
+    }
+    return ResponseEntity.ok()
+        .eTag(content.etag())
+        .contentType(MediaType.TEXT_PLAIN)
+        .body(content.body());
+  }
+
+  // GET http://localhost:8080/api/snippet/stream?view=summary
+  // Newline-delimited JSON: a header line with maxSnippets and nextCursor, then one line per
+  // snippet in the order they finish loading.
+  @GetMapping(value = "/stream", produces = NDJSON)
+  public ResponseEntity<StreamingResponseBody> streamAllSnippets(
+      @RequestParam(value = "from", required = false) Integer from,
+      @RequestParam(value = "to", required = false) Integer to,
+      @RequestParam(value = "cursor", required = false) String cursor,
+      @RequestParam(value = "view", required = false, defaultValue = "full") String view) {
+    SnippetView snippetView = SnippetView.valueOf(view.toUpperCase());
+    if (cursor != null) {
+      PageCursor pageCursor = PageCursor.decode(cursor);
+      from = pageCursor.offset();
+      to = pageCursor.offset() + pageCursor.pageSize();
+    }
+    Integer pageFrom = from;
+    Integer pageTo = to;
+    String userId = getUserId();
+    StreamingResponseBody body =
+        outputStream ->
+            codeSnippetService.streamAllSnippets(
+                pageFrom,
+                pageTo,
+                userId,
+                snippetView,
+                header -> writeLine(outputStream, header),
+                snippet -> writeLine(outputStream, snippet));
+    return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+  }
+
+  private void writeLine(OutputStream outputStream, Object value) {
+    try {
+      outputStream.write(objectMapper.writeValueAsBytes(value));
+      outputStream.write('\n');
+      outputStream.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error writing the snippet stream", e);
+    }
+  }
+}
@@ -13,4 +13,6 @@ import lombok.Setter;
 public class AllSnippetsSendDto {
   private List<SnippetSendDto> snippets;
   private int maxSnippets;
+  // Null on the last page
+  private String nextCursor;
 }
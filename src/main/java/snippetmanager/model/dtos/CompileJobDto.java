@@ -0,0 +1,16 @@
+package snippetmanager.model.dtos;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class CompileJobDto {
+  private String assetId;
+  // Echoed back in the result with language and version, so an outcome for an older job can be
+  // told apart
+  private String contentHash;
+  private String language;
+  private String version;
+  private String content;
+}
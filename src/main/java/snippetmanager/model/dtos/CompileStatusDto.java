@@ -0,0 +1,13 @@
+package snippetmanager.model.dtos;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class CompileStatusDto {
+  private String assetId;
+  private String status;
+  // Compile error reported by printscript, null unless the status is INVALID
+  private String message;
+}
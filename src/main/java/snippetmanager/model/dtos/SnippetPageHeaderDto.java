@@ -0,0 +1,12 @@
+package snippetmanager.model.dtos;
+
+import lombok.Builder;
+import lombok.Data;
+
+// First line of the streamed listing, written before any snippet is loaded
+@Data
+@Builder
+public class SnippetPageHeaderDto {
+  private int maxSnippets;
+  private String nextCursor;
+}
@@ -1,6 +1,7 @@
 package snippetmanager.model.dtos;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import lombok.Builder;
 import lombok.Getter;
@@ -28,6 +29,15 @@ public class SnippetReceivedDto {
     }
   }
 
+  // A fresh stream over the uploaded part on every call, for readers that should not copy it
+  public InputStream openContent() {
+    try {
+      return content.getInputStream();
+    } catch (IOException e) {
+      throw new RuntimeException("Error reading file content", e);
+    }
+  }
+
   public CodeLanguage getLanguageInEnum() {
     return CodeLanguage.valueOf(language.toUpperCase());
   }
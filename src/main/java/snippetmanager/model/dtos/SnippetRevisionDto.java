@@ -0,0 +1,14 @@
+package snippetmanager.model.dtos;
+
+import java.time.LocalDateTime;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class SnippetRevisionDto {
+  private int revision;
+  private String contentHash;
+  private String userId;
+  private LocalDateTime createdAt;
+}
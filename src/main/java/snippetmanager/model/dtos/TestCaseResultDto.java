@@ -0,0 +1,16 @@
+package snippetmanager.model.dtos;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class TestCaseResultDto {
+  private String testId;
+  private String name;
+  // Null when the run failed; error then says why
+  private String result;
+  private String error;
+  private boolean cached;
+  private long durationMs;
+}
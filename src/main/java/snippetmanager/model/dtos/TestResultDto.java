@@ -0,0 +1,12 @@
+package snippetmanager.model.dtos;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class TestResultDto {
+  private String result;
+  // True when the result was answered from the test result cache
+  private boolean cached;
+}
@@ -0,0 +1,16 @@
+package snippetmanager.model.dtos;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Data;
+
+@Data
+@Builder
+public class TestSuiteResultDto {
+  private String assetId;
+  private int total;
+  private int errors;
+  private int cached;
+  private long durationMs;
+  private List<TestCaseResultDto> results;
+}
@@ -12,6 +12,7 @@ import java.time.LocalDateTime;
 import lombok.Getter;
 import lombok.Setter;
 import snippetmanager.util.enums.CodeLanguage;
+import snippetmanager.util.enums.CompileStatus;
 import snippetmanager.util.enums.LintResult;
 
 @Entity
@@ -35,6 +36,15 @@ public class CodeSnippet {
   @Enumerated(EnumType.STRING)
   private LintResult lintResult;
 
+  // Null for snippets saved before compile statuses existed, which were compiled on write
+  @Enumerated(EnumType.STRING)
+  private CompileStatus compileStatus;
+
+  private String compileMessage;
+
+  // SHA-256 of the stored content, kept here so validators don't need the asset service
+  private String contentHash;
+
   @PrePersist
   protected void onCreate() {
     createdAt = LocalDateTime.now();
@@ -0,0 +1,45 @@
+package snippetmanager.model.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import java.time.LocalDateTime;
+import lombok.Getter;
+import lombok.Setter;
+
+// One saved version of a snippet. Checkpoints hold the full content; every other revision holds
+// a LineDelta against the revision before it.
+@Entity
+@Getter
+@Setter
+@Table(uniqueConstraints = @UniqueConstraint(columnNames = {"assetId", "revisionNumber"}))
+public class SnippetRevision {
+  @Id
+  @GeneratedValue(strategy = GenerationType.UUID)
+  private String id;
+
+  private String assetId;
+
+  private int revisionNumber;
+
+  private boolean checkpoint;
+
+  @Column(columnDefinition = "TEXT")
+  private String content;
+
+  private String contentHash;
+
+  private String userId;
+
+  private LocalDateTime createdAt;
+
+  @PrePersist
+  protected void onCreate() {
+    createdAt = LocalDateTime.now();
+  }
+}
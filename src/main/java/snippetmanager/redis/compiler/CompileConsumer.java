@@ -0,0 +1,57 @@
+package snippetmanager.redis.compiler;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Duration;
+import org.austral.ingsis.redis.RedisStreamConsumer;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.redis.connection.stream.ObjectRecord;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.stream.StreamReceiver;
+import org.springframework.stereotype.Component;
+import snippetmanager.services.CodeSnippetService;
+
+@Component
+@Profile("!test")
+public class CompileConsumer extends RedisStreamConsumer<String> {
+
+  @Autowired private CodeSnippetService codeSnippetService;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  public CompileConsumer(
+      @Value("${redis.consumer.compile}") @NotNull String streamKey,
+      @Value("${redis.consumer.group}") @NotNull String consumerGroup,
+      @NotNull RedisTemplate<String, String> redis) {
+    super(streamKey, consumerGroup, redis);
+  }
+
+  @Override
+  protected void onMessage(@NotNull ObjectRecord<String, String> objectRecord) {
+    try {
+      CompileRedisResult compileRedisResult =
+          objectMapper.readValue(objectRecord.getValue(), CompileRedisResult.class);
+
+      codeSnippetService.saveCompileResult(
+          compileRedisResult.getAssetId(),
+          compileRedisResult.getContentHash(),
+          compileRedisResult.getLanguage(),
+          compileRedisResult.getVersion(),
+          compileRedisResult.isCompiled(),
+          compileRedisResult.getMessage());
+    } catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @NotNull
+  @Override
+  protected StreamReceiver.StreamReceiverOptions<String, ObjectRecord<String, String>> options() {
+    return StreamReceiver.StreamReceiverOptions.builder()
+        .pollTimeout(Duration.ofSeconds(5))
+        .targetType(String.class)
+        .build();
+  }
+}
@@ -0,0 +1,33 @@
+package snippetmanager.redis.compiler;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import snippetmanager.model.dtos.CompileJobDto;
+import snippetmanager.redis.config.RedisStreamProducer;
+
+@Component
+public class CompileProducer extends RedisStreamProducer {
+
+  private final MeterRegistry meterRegistry;
+
+  @Autowired
+  public CompileProducer(
+      @Value("${redis.producer.compile}") String streamKey,
+      ReactiveRedisTemplate<String, String> redis,
+      MeterRegistry meterRegistry) {
+    super(streamKey, redis);
+    this.meterRegistry = meterRegistry;
+  }
+
+  // A job that is never queued leaves its snippet validating until it is saved again
+  public void publishEvent(CompileJobDto compileJob) {
+    emit(compileJob).subscribe(id -> countJob("published"), error -> countJob("failed"));
+  }
+
+  private void countJob(String outcome) {
+    meterRegistry.counter("snippet.compile.jobs", "outcome", outcome).increment();
+  }
+}
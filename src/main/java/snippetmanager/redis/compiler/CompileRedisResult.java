@@ -0,0 +1,15 @@
+package snippetmanager.redis.compiler;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class CompileRedisResult {
+  private String assetId;
+  private String contentHash;
+  private String language;
+  private String version;
+  private boolean compiled;
+  private String message;
+}
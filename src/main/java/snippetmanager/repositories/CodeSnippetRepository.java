@@ -1,7 +1,13 @@
 package snippetmanager.repositories;
 
+import jakarta.persistence.LockModeType;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import snippetmanager.model.entities.CodeSnippet;
 
@@ -9,5 +15,12 @@ import snippetmanager.model.entities.CodeSnippet;
 public interface CodeSnippetRepository extends JpaRepository<CodeSnippet, String> {
   Optional<CodeSnippet> findCodeSnippetByAssetId(String assetId);
 
+  List<CodeSnippet> findAllByAssetIdIn(Collection<String> assetIds);
+
   Optional<CodeSnippet> deleteCodeSnippetByAssetId(String assetId);
+
+  // Held until the transaction ends, so writers of the same snippet run one after the other
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @Query("SELECT c FROM CodeSnippet c WHERE c.assetId = :assetId")
+  Optional<CodeSnippet> lockByAssetId(@Param("assetId") String assetId);
 }
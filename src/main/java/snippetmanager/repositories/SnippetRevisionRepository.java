@@ -0,0 +1,25 @@
+package snippetmanager.repositories;
+
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import snippetmanager.model.entities.SnippetRevision;
+
+public interface SnippetRevisionRepository extends JpaRepository<SnippetRevision, String> {
+  List<SnippetRevision> findAllByAssetIdOrderByRevisionNumberAsc(String assetId);
+
+  Optional<SnippetRevision> findTopByAssetIdOrderByRevisionNumberDesc(String assetId);
+
+  @Query(
+      "SELECT r FROM SnippetRevision r WHERE r.assetId = :assetId AND r.checkpoint = true"
+          + " AND r.revisionNumber <= :revisionNumber ORDER BY r.revisionNumber DESC LIMIT 1")
+  Optional<SnippetRevision> findCheckpointAtOrBefore(
+      @Param("assetId") String assetId, @Param("revisionNumber") int revisionNumber);
+
+  List<SnippetRevision> findAllByAssetIdAndRevisionNumberBetweenOrderByRevisionNumberAsc(
+      String assetId, int from, int to);
+
+  void deleteAllByAssetId(String assetId);
+}
@@ -1,34 +1,64 @@
 package snippetmanager.services;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.persistence.EntityNotFoundException;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.dao.PermissionDeniedDataAccessException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import snippetmanager.model.dtos.AllSnippetsRecieveDto;
 import snippetmanager.model.dtos.AllSnippetsSendDto;
+import snippetmanager.model.dtos.CompileJobDto;
+import snippetmanager.model.dtos.CompileStatusDto;
 import snippetmanager.model.dtos.LanguagesDto;
+import snippetmanager.model.dtos.SnippetIdAuthorDto;
+import snippetmanager.model.dtos.SnippetPageHeaderDto;
 import snippetmanager.model.dtos.SnippetReceivedDto;
+import snippetmanager.model.dtos.SnippetRevisionDto;
 import snippetmanager.model.dtos.SnippetSendDto;
 import snippetmanager.model.dtos.TestCaseDto;
+import snippetmanager.model.dtos.TestCaseResultDto;
+import snippetmanager.model.dtos.TestResultDto;
+import snippetmanager.model.dtos.TestSuiteResultDto;
 import snippetmanager.model.entities.CodeSnippet;
 import snippetmanager.model.entities.FormatterRule;
 import snippetmanager.model.entities.Languages;
 import snippetmanager.model.entities.LintingRule;
 import snippetmanager.model.entities.TestCase;
+import snippetmanager.redis.compiler.CompileProducer;
 import snippetmanager.redis.formatter.FormatterProducer;
 import snippetmanager.redis.linter.LintProducer;
 import snippetmanager.repositories.CodeSnippetRepository;
@@ -36,8 +66,14 @@ import snippetmanager.repositories.FormatterRuleRepository;
 import snippetmanager.repositories.LanguagesRepository;
 import snippetmanager.repositories.LintingRuleRepository;
 import snippetmanager.repositories.TestCaseRepository;
+import snippetmanager.util.ContentDigest;
 import snippetmanager.util.DefaultRulesFactory;
+import snippetmanager.util.EtagMatcher;
+import snippetmanager.util.FanOutExecutor;
+import snippetmanager.util.PageCursor;
+import snippetmanager.util.enums.CompileStatus;
 import snippetmanager.util.enums.PermissionType;
+import snippetmanager.util.enums.SnippetView;
 import snippetmanager.webservice.asset.AssetManager;
 import snippetmanager.webservice.permission.PermissionManager;
 import snippetmanager.webservice.printscript.PrintscriptManager;
@@ -67,8 +103,31 @@ public class CodeSnippetService {
 
   private UserService userService;
 
+  private FanOutExecutor fanOutExecutor;
+
   @Autowired private TestCaseRepository testCaseRepository;
 
+  @Autowired private MeterRegistry meterRegistry;
+
+  @Autowired private SnippetRevisionService snippetRevisionService;
+
+  @Autowired private CompileProducer compileProducer;
+
+  @Value("${snippet.compile.async:false}")
+  private boolean asyncCompile;
+
+  @Value("${snippet.listing.default-page-size}")
+  private int defaultPageSize;
+
+  @Value("${snippet.listing.max-page-size}")
+  private int maxPageSize;
+
+  @Value("${snippet.tests.max-concurrency:4}")
+  private int testConcurrency;
+
+  @Value("${snippet.create.asset-upload-timeout:35s}")
+  private Duration assetUploadTimeout;
+
   public CodeSnippetService(
       CodeSnippetRepository codeSnippetRepository,
       LintProducer lintProducer,
@@ -81,7 +140,8 @@ public class CodeSnippetService {
       @Lazy FormatterRuleService formatterRuleService,
       LanguagesRepository languagesRepository,
       FormatterProducer formatterProducer,
-      UserService userService) {
+      UserService userService,
+      FanOutExecutor fanOutExecutor) {
     this.lintProducer = lintProducer;
     this.codeSnippetRepository = codeSnippetRepository;
     this.permissionManager = permissionManager;
@@ -94,13 +154,33 @@ public class CodeSnippetService {
     this.languagesRepository = languagesRepository;
     this.formatterProducer = formatterProducer;
     this.userService = userService;
+    this.fanOutExecutor = fanOutExecutor;
   }
 
   private final String assetManagerContainer = "snippets";
 
   @Transactional
   public String createSnippet(SnippetReceivedDto snippet, String userId) {
+    // In async mode the snippet is saved as validating and the compile stream decides
+    if (asyncCompile) {
+      return saveSnippet(snippet, userId, CompileStatus.VALIDATING);
+    }
     compileSnippet(snippet);
+    return saveCompiledSnippet(snippet, userId);
+  }
+
+  // Everything createSnippet does after the compile, for callers that compiled it themselves
+  @Transactional
+  public String saveCompiledSnippet(SnippetReceivedDto snippet, String userId) {
+    return saveSnippet(snippet, userId, CompileStatus.VALID);
+  }
+
+  public boolean compilesAsynchronously() {
+    return asyncCompile;
+  }
+
+  private String saveSnippet(
+      SnippetReceivedDto snippet, String userId, CompileStatus compileStatus) {
     if (snippet.getAssetId() != null) {
       codeSnippetRepository
           .findCodeSnippetByAssetId(snippet.getAssetId())
@@ -109,38 +189,140 @@ public class CodeSnippetService {
                 throw new IllegalArgumentException("Snippet with the same assetId already exists");
               });
     }
-    CodeSnippet codeSnippet = createAndSaveCodeSnippet(snippet);
-
-    ResponseEntity<String> permissionResponse =
-        createNewPermission(userId, codeSnippet.getAssetId());
-    if (permissionResponse.getStatusCode().isError()) {
+    CodeSnippet codeSnippet = createAndSaveCodeSnippet(snippet, compileStatus);
+    String assetId = codeSnippet.getAssetId();
+
+    // Permission and asset only need the id, so the upload runs while the permission is created.
+    // If the create fails, every downstream step that may have been applied is undone. An upload
+    // that times out keeps running after the request ends and its multipart file is cleaned up,
+    // so the worker is handed a copy of the content.
+    MultipartFile content = copyOf(snippet.getContent());
+    CompletableFuture<ResponseEntity<String>> assetUpload =
+        fanOutExecutor.submit(() -> createNewAsset(codeSnippet, content));
+    CreateStep permission =
+        CreateStep.run("permission", () -> createNewPermission(userId, assetId));
+    CreateStep asset = CreateStep.run("asset", () -> awaitUpload(assetUpload));
+    try {
+      permission.check();
+      asset.check();
+      snippetRevisionService.recordRevision(assetId, userId, snippet.getContentInString());
+      createDefaultRulesIfNeeded(userId);
+      publishToRedis(snippet.getContent(), codeSnippet, userId);
+      if (compileStatus == CompileStatus.VALIDATING) {
+        publishCompileJob(snippet.getContent(), codeSnippet);
+      }
+    } catch (RuntimeException e) {
       TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
-      throw new HttpServerErrorException(permissionResponse.getStatusCode());
+      if (asset.mayHaveApplied()) {
+        // An upload that timed out is still running, and a delete sent now could land before it
+        assetUpload.whenComplete(
+            (response, error) -> compensate("asset", () -> deleteAsset(assetId)));
+      }
+      if (permission.mayHaveApplied()) {
+        compensate("permission", () -> deletePermission(assetId));
+      }
+      throw e;
     }
 
-    ResponseEntity<String> assetResponse = createNewAsset(codeSnippet, snippet.getContent());
-    if (assetResponse.getStatusCode().isError()) {
-      TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
-      deletePermission(codeSnippet.getAssetId());
-      throw new HttpServerErrorException(assetResponse.getStatusCode());
+    return "Snippet created successfully";
+  }
+
+  // Outcome of one downstream step of a create
+  private record CreateStep(String name, ResponseEntity<String> response, RuntimeException error) {
+
+    static CreateStep run(String name, Supplier<ResponseEntity<String>> call) {
+      try {
+        return new CreateStep(name, call.get(), null);
+      } catch (RuntimeException e) {
+        return new CreateStep(name, null, e);
+      }
     }
 
-    createDefaultRulesIfNeeded(userId);
-    publishToRedis(snippet.getContent(), codeSnippet, userId);
+    // The clients use retrieve(), so a refusal arrives as a WebClientResponseException. Only a
+    // 4xx proves the step was turned down; a 5xx or a timeout may still have been applied.
+    boolean mayHaveApplied() {
+      HttpStatusCode status =
+          error instanceof WebClientResponseException refused
+              ? refused.getStatusCode()
+              : response == null ? null : response.getStatusCode();
+      return status == null || !status.is4xxClientError();
+    }
 
-    return "Snippet created successfully";
+    void check() {
+      if (error != null) {
+        throw error;
+      }
+      if (response == null) {
+        throw new HttpServerErrorException(HttpStatus.BAD_GATEWAY, "No " + name + " response");
+      }
+      if (response.getStatusCode().isError()) {
+        throw new HttpServerErrorException(response.getStatusCode());
+      }
+    }
+  }
+
+  // The asset service call has its own timeout; this bounds the wait for a worker that never gets
+  // to it. A timed out upload fails the step without a response, so it counts as applied.
+  private ResponseEntity<String> awaitUpload(CompletableFuture<ResponseEntity<String>> upload) {
+    try {
+      return upload.get(assetUploadTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      throw new HttpServerErrorException(HttpStatus.GATEWAY_TIMEOUT, "Asset upload timed out");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the asset upload", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new RuntimeException("Error uploading the asset", e.getCause());
+    }
+  }
+
+  // A failed compensation must not hide the error that caused it, so it is only counted
+  private void compensate(String step, Supplier<ResponseEntity<String>> action) {
+    String outcome;
+    try {
+      ResponseEntity<String> response = action.get();
+      outcome = response != null && !response.getStatusCode().isError() ? "undone" : "failed";
+    } catch (RuntimeException e) {
+      outcome = "failed";
+    }
+    meterRegistry
+        .counter("snippet.create.compensations", "step", step, "outcome", outcome)
+        .increment();
   }
 
   public SnippetSendDto getSnippet(String assetId, String userId) {
+    return loadSnippet(findReadableSnippet(assetId), userId);
+  }
+
+  // ETag and snippet for a conditional GET, from one permission check and one lookup. The body
+  // is left out, and the asset service not called, while ifNoneMatch still matches the ETag.
+  public Tagged<SnippetSendDto> getSnippet(String assetId, String userId, String ifNoneMatch) {
+    CodeSnippet codeSnippet = findReadableSnippet(assetId);
+    String etag = etag(codeSnippet, userId);
+    if (EtagMatcher.matches(ifNoneMatch, etag)) {
+      return new Tagged<>(etag, null);
+    }
+    return new Tagged<>(etag, loadSnippet(codeSnippet, userId));
+  }
+
+  // A response body with the ETag of the row it was built from; body is null when not modified
+  public record Tagged<T>(String etag, T body) {}
 
+  private CodeSnippet findReadableSnippet(String assetId) {
     boolean canAccess = canReadSnippet(assetId);
     if (!canAccess) {
       throw new PermissionDeniedDataAccessException(
           "You don't have permission to access this snippet",
           new Exception("You don't have permission to access this snippet"));
     }
+    return findSnippetByAssetId(assetId);
+  }
 
-    CodeSnippet codeSnippet = findSnippetByAssetId(assetId);
+  private SnippetSendDto loadSnippet(CodeSnippet codeSnippet, String userId) {
+    String assetId = codeSnippet.getAssetId();
     String lintResult = codeSnippet.getResultAsString();
 
     InputStream assetResponse = getAsset(assetId);
@@ -151,44 +333,219 @@ public class CodeSnippetService {
     return snippetDto;
   }
 
+  // ETag and a writer of the raw content, from one permission check and one lookup. The writer
+  // copies straight from the asset service without building a SnippetSendDto, and is left out
+  // while ifNoneMatch still matches the ETag.
+  public Tagged<StreamingResponseBody> getSnippetContent(
+      String assetId, String userId, String ifNoneMatch) {
+    String etag = etag(findReadableSnippet(assetId), userId);
+    if (EtagMatcher.matches(ifNoneMatch, etag)) {
+      return new Tagged<>(etag, null);
+    }
+    StreamingResponseBody writer =
+        outputStream -> assetManager.writeAsset(assetManagerContainer, assetId, outputStream);
+    return new Tagged<>(etag, writer);
+  }
+
+  public List<SnippetRevisionDto> getRevisions(String assetId) {
+    boolean canAccess = canReadSnippet(assetId);
+    if (!canAccess) {
+      throw new PermissionDeniedDataAccessException(
+          "You don't have permission to access this snippet",
+          new Exception("You don't have permission to access this snippet"));
+    }
+    return snippetRevisionService.getRevisions(assetId);
+  }
+
+  public String getRevisionContent(String assetId, int revision) {
+    boolean canAccess = canReadSnippet(assetId);
+    if (!canAccess) {
+      throw new PermissionDeniedDataAccessException(
+          "You don't have permission to access this snippet",
+          new Exception("You don't have permission to access this snippet"));
+    }
+    return snippetRevisionService.rebuild(assetId, revision);
+  }
+
+  // Validator for conditional GETs, built from metadata only so the asset service is not called
+  String etag(CodeSnippet codeSnippet, String userId) {
+    return ContentDigest.sha256(
+        codeSnippet.getUpdatedAt()
+            + "|"
+            + codeSnippet.getLintResult()
+            + "|"
+            + codeSnippet.getContentHash()
+            + "|"
+            + userId);
+  }
+
   public AllSnippetsSendDto getAllSnippets(Integer from, Integer to, String userId) {
+    return getAllSnippets(from, to, userId, SnippetView.FULL);
+  }
+
+  public AllSnippetsSendDto getAllSnippets(
+      Integer from, Integer to, String userId, SnippetView view) {
     userService.createUser(userId);
-    return getAllSnippetsWithPermission(from, to, userId, PermissionType.READ);
+    return getAllSnippetsWithPermission(from, to, userId, PermissionType.READ, view);
+  }
+
+  public AllSnippetsSendDto getAllSnippets(String cursor, String userId, SnippetView view) {
+    PageCursor pageCursor = PageCursor.decode(cursor);
+    int from = pageCursor.offset();
+    return getAllSnippets(from, from + pageCursor.pageSize(), userId, view);
   }
 
-  public List<SnippetSendDto> getAllOwnSnippets(String userId) {
-    AllSnippetsSendDto allSnippetsSendDto =
-        getAllSnippetsWithPermission(null, null, userId, PermissionType.READ_WRITE);
+  // Same page as getAllSnippets, but each snippet is handed over as soon as it has been loaded
+  // instead of after the slowest one
+  public void streamAllSnippets(
+      Integer from,
+      Integer to,
+      String userId,
+      SnippetView view,
+      Consumer<SnippetPageHeaderDto> onHeader,
+      Consumer<SnippetSendDto> onSnippet) {
+    userService.createUser(userId);
+    SnippetPage page = loadSnippetPage(from, to, PermissionType.READ);
+    onHeader.accept(
+        SnippetPageHeaderDto.builder()
+            .maxSnippets(page.maxSnippets())
+            .nextCursor(page.nextCursor())
+            .build());
+    fanOutExecutor.forEachCompleted(
+        IntStream.range(0, page.snippets().size()).boxed().toList(),
+        index -> toSnippetSendDto(page, index, userId, view),
+        onSnippet);
+  }
 
-    return allSnippetsSendDto.getSnippets();
+  // Walks the user's own snippets one page at a time, so only a page is held in memory
+  public void forEachOwnSnippet(String userId, Consumer<SnippetSendDto> action) {
+    int from = 0;
+    while (true) {
+      AllSnippetsSendDto page =
+          getAllSnippetsWithPermission(
+              from, from + maxPageSize, userId, PermissionType.READ_WRITE, SnippetView.FULL);
+      page.getSnippets().forEach(action);
+      if (page.getNextCursor() == null) {
+        return;
+      }
+      from = PageCursor.decode(page.getNextCursor()).offset();
+    }
   }
 
   @Transactional
   public String updateSnippet(String assetId, String userId, SnippetReceivedDto codeSnippet) {
-    Optional<CodeSnippet> snippet = codeSnippetRepository.findById(assetId);
+    // The row stays locked until the update commits, so concurrent updates of one snippet upload,
+    // store their hash and number their revision in the same order
+    Optional<CodeSnippet> snippet = codeSnippetRepository.lockByAssetId(assetId);
     if (snippet.isEmpty()) {
       throw new EntityNotFoundException("Snippet not found with assetId " + assetId);
     }
-    codeSnippet.setLanguage(snippet.get().getLanguage().name());
-    codeSnippet.setVersion(snippet.get().getVersion());
-    compileSnippet(codeSnippet);
     boolean canAccess = canWriteSnippet(assetId);
     if (!canAccess) {
       throw new PermissionDeniedDataAccessException(
           "You don't have permission to write this snippet",
           new Exception("You don't have permission to write this snippet"));
     }
+
+    // Saving identical bytes changes nothing downstream, so skip compile, upload and re-lint.
+    // A snippet still validating may have lost its job or result, so saving it again retries the
+    // compile: queued again in async mode, or run below like any other change.
+    String contentHash = hashContent(codeSnippet.getContent());
+    if (contentHash.equals(snippet.get().getContentHash())) {
+      if (snippet.get().getCompileStatus() != CompileStatus.VALIDATING) {
+        countUpdate("unchanged");
+        return "Snippet updated successfully";
+      }
+      if (asyncCompile) {
+        publishCompileJob(codeSnippet.getContent(), snippet.get());
+        countUpdate("requeued");
+        return "Snippet updated successfully";
+      }
+    }
+
+    codeSnippet.setLanguage(snippet.get().getLanguage().name());
+    codeSnippet.setVersion(snippet.get().getVersion());
+    if (asyncCompile) {
+      snippet.get().setCompileStatus(CompileStatus.VALIDATING);
+    } else {
+      compileSnippet(codeSnippet);
+      snippet.get().setCompileStatus(CompileStatus.VALID);
+    }
+    snippet.get().setCompileMessage(null);
     ResponseEntity<?> assetResponse =
         assetManager.createAsset("snippets", assetId, codeSnippet.getContent());
     if (assetResponse.getStatusCode().isError()) {
       throw new HttpServerErrorException(assetResponse.getStatusCode());
     }
+    snippet.get().setContentHash(contentHash);
+    codeSnippetRepository.save(snippet.get());
+    snippetRevisionService.recordRevision(assetId, userId, codeSnippet.getContentInString());
 
     publishToRedis(codeSnippet.getContent(), snippet.get(), userId);
+    if (asyncCompile) {
+      publishCompileJob(codeSnippet.getContent(), snippet.get());
+    }
+    countUpdate("written");
 
     return "Snippet updated successfully";
   }
 
+  private void countUpdate(String outcome) {
+    meterRegistry.counter("snippet.updates", "outcome", outcome).increment();
+  }
+
+  public CompileStatusDto getCompileStatus(String assetId) {
+    boolean canAccess = canReadSnippet(assetId);
+    if (!canAccess) {
+      throw new PermissionDeniedDataAccessException(
+          "You don't have permission to access this snippet",
+          new Exception("You don't have permission to access this snippet"));
+    }
+
+    CodeSnippet codeSnippet = findSnippetByAssetId(assetId);
+    CompileStatus compileStatus =
+        Objects.requireNonNullElse(codeSnippet.getCompileStatus(), CompileStatus.VALID);
+    return CompileStatusDto.builder()
+        .assetId(assetId)
+        .status(compileStatus.name())
+        .message(codeSnippet.getCompileMessage())
+        .build();
+  }
+
+  // Outcome from the compile stream. It is dropped when the content, language or version changed
+  // after the job was queued, so a slow result for an older job cannot overwrite the newer one.
+  @Transactional
+  public void saveCompileResult(
+      String assetId,
+      String contentHash,
+      String language,
+      String version,
+      boolean compiled,
+      String message) {
+    Optional<CodeSnippet> snippet = codeSnippetRepository.findCodeSnippetByAssetId(assetId);
+    if (snippet.isEmpty() || !isCurrentCompileJob(snippet.get(), contentHash, language, version)) {
+      countCompileResult("stale");
+      return;
+    }
+    CodeSnippet codeSnippet = snippet.get();
+    codeSnippet.setCompileStatus(compiled ? CompileStatus.VALID : CompileStatus.INVALID);
+    codeSnippet.setCompileMessage(compiled ? null : message);
+    codeSnippetRepository.save(codeSnippet);
+    countCompileResult(compiled ? "valid" : "invalid");
+  }
+
+  private boolean isCurrentCompileJob(
+      CodeSnippet codeSnippet, String contentHash, String language, String version) {
+    return Objects.equals(contentHash, codeSnippet.getContentHash())
+        && codeSnippet.getLanguage() != null
+        && codeSnippet.getLanguage().name().equals(language)
+        && Objects.equals(version, codeSnippet.getVersion());
+  }
+
+  private void countCompileResult(String outcome) {
+    meterRegistry.counter("snippet.compile.results", "outcome", outcome).increment();
+  }
+
   @Transactional
   public String deleteSnippet(String assetId) {
     boolean canAccess = canWriteSnippet(assetId);
@@ -204,18 +561,22 @@ public class CodeSnippetService {
       throw new HttpServerErrorException(assetResponse.getStatusCode());
     }
     deletePermission(assetId);
+    snippetRevisionService.deleteRevisions(assetId);
     codeSnippetRepository.deleteCodeSnippetByAssetId(assetId);
 
     return "Snippet deleted successfully";
   }
 
   // ** Internal methods
-  private CodeSnippet createAndSaveCodeSnippet(SnippetReceivedDto snippet) {
+  private CodeSnippet createAndSaveCodeSnippet(
+      SnippetReceivedDto snippet, CompileStatus compileStatus) {
     CodeSnippet codeSnippet = new CodeSnippet();
+    codeSnippet.setCompileStatus(compileStatus);
     codeSnippet.setLanguage(snippet.getLanguageInEnum());
     codeSnippet.setVersion(snippet.getVersion());
     codeSnippet.setName(snippet.getName());
     codeSnippet.setExtension(snippet.getExtension());
+    codeSnippet.setContentHash(hashContent(snippet.getContent()));
     try {
       codeSnippetRepository.save(codeSnippet);
     } catch (Exception e) {
@@ -239,6 +600,19 @@ public class CodeSnippetService {
         .build();
   }
 
+  // Everything but the content, so it can be built without calling the asset service
+  SnippetSendDto getSnippetSummaryDto(String userId, CodeSnippet codeSnippet) {
+    return SnippetSendDto.builder()
+        .language(codeSnippet.getLanguage().name())
+        .version(codeSnippet.getVersion())
+        .name(codeSnippet.getName())
+        .assetId(codeSnippet.getAssetId())
+        .compliance(codeSnippet.getResultAsString())
+        .userId(userId)
+        .extension(codeSnippet.getExtension())
+        .build();
+  }
+
   @NotNull
   private SnippetSendDto getSnippetSendDto(String userId, CodeSnippet codeSnippet) {
     InputStream assetResponse = getAsset(codeSnippet.getAssetId());
@@ -251,43 +625,125 @@ public class CodeSnippetService {
   }
 
   private AllSnippetsSendDto getAllSnippetsWithPermission(
-      Integer from, Integer to, String userId, PermissionType permissionType) {
-    AllSnippetsRecieveDto allSnippetsRecieveDto =
-        permissionManager
-            .getSnippetsUserWithPermission(from, to, permissionType.toString())
-            .getBody();
+      Integer from,
+      Integer to,
+      String userId,
+      PermissionType permissionType,
+      SnippetView view) {
+    SnippetPage page = loadSnippetPage(from, to, permissionType);
 
-    assert allSnippetsRecieveDto != null;
     List<SnippetSendDto> snippetSendDtos =
-        Objects.requireNonNull(
-            Objects.requireNonNull(allSnippetsRecieveDto.getSnippetsIds()).stream()
-                .map(
-                    snippetReceived -> {
-                      CodeSnippet snippet = findSnippetByAssetId(snippetReceived.getSnippetId());
-                      SnippetSendDto snippetSendDto = getSnippetSendDto(userId, snippet);
-                      snippetSendDto.setAuthor(getUserName(snippetReceived.getAuthor()));
-                      return snippetSendDto;
-                    })
-                .collect(Collectors.toList()));
+        fanOutExecutor.mapOrdered(
+            IntStream.range(0, page.snippets().size()).boxed().toList(),
+            index -> toSnippetSendDto(page, index, userId, view));
 
     return AllSnippetsSendDto.builder()
         .snippets(snippetSendDtos)
-        .maxSnippets(allSnippetsRecieveDto.getMaxSnippets())
+        .maxSnippets(page.maxSnippets())
+        .nextCursor(page.nextCursor())
         .build();
   }
 
-  private String getUserName(String userId) {
-    return userService.getUserName(userId);
+  // One page of ids and rows, before any per-snippet call is made
+  record SnippetPage(
+      List<SnippetIdAuthorDto> snippetsIds,
+      List<CodeSnippet> snippets,
+      Map<String, String> authorNames,
+      int maxSnippets,
+      String nextCursor) {}
+
+  private SnippetPage loadSnippetPage(Integer from, Integer to, PermissionType permissionType) {
+    int offset = pageOffset(from);
+    int pageSize = pageSize(offset, to);
+    AllSnippetsRecieveDto allSnippetsRecieveDto =
+        permissionManager
+            .getSnippetsUserWithPermission(offset, offset + pageSize, permissionType.toString())
+            .getBody();
+    return toSnippetPage(allSnippetsRecieveDto, offset, pageSize);
+  }
+
+  int pageOffset(Integer from) {
+    return from == null ? 0 : Math.max(from, 0);
+  }
+
+  int pageSize(int offset, Integer to) {
+    return to == null ? defaultPageSize : Math.min(Math.max(to - offset, 0), maxPageSize);
+  }
+
+  // Resolves the ids returned by the permission service into rows and author names
+  SnippetPage toSnippetPage(AllSnippetsRecieveDto allSnippetsRecieveDto, int offset, int pageSize) {
+    assert allSnippetsRecieveDto != null;
+    List<SnippetIdAuthorDto> snippetsIds =
+        Objects.requireNonNull(allSnippetsRecieveDto.getSnippetsIds());
+    List<CodeSnippet> snippets =
+        findSnippetsByAssetIds(snippetsIds.stream().map(SnippetIdAuthorDto::getSnippetId).toList());
+    Map<String, String> authorNames =
+        getUserNames(snippetsIds.stream().map(SnippetIdAuthorDto::getAuthor).toList());
+
+    int next = offset + snippetsIds.size();
+    String nextCursor =
+        snippetsIds.isEmpty() || next >= allSnippetsRecieveDto.getMaxSnippets()
+            ? null
+            : new PageCursor(next, pageSize).encode();
+
+    return new SnippetPage(
+        snippetsIds, snippets, authorNames, allSnippetsRecieveDto.getMaxSnippets(), nextCursor);
+  }
+
+  private SnippetSendDto toSnippetSendDto(
+      SnippetPage page, int index, String userId, SnippetView view) {
+    CodeSnippet snippet = page.snippets().get(index);
+    SnippetSendDto snippetSendDto =
+        view == SnippetView.SUMMARY
+            ? getSnippetSummaryDto(userId, snippet)
+            : getSnippetSendDto(userId, snippet);
+    snippetSendDto.setAuthor(authorOf(page, index));
+    return snippetSendDto;
+  }
+
+  String authorOf(SnippetPage page, int index) {
+    return page.authorNames().get(page.snippetsIds().get(index).getAuthor());
+  }
+
+  // Full DTO from content that was already loaded
+  SnippetSendDto toSnippetSendDto(CodeSnippet codeSnippet, byte[] content, String userId) {
+    SnippetSendDto snippetSendDto = getSnippetSummaryDto(userId, codeSnippet);
+    snippetSendDto.setContent(new String(content, StandardCharsets.UTF_8));
+    return snippetSendDto;
+  }
+
+  private Map<String, String> getUserNames(List<String> userIds) {
+    return userService.getUserNames(userIds.stream().filter(Objects::nonNull).distinct().toList());
+  }
+
+  private String hashContent(MultipartFile content) {
+    try {
+      return ContentDigest.sha256(content.getInputStream());
+    } catch (IOException e) {
+      throw new RuntimeException("Error reading the file content", e);
+    }
   }
 
   private String getContentFromMultipartFile(MultipartFile content) {
     try {
-      return new String(content.getBytes());
+      return new String(content.getBytes(), StandardCharsets.UTF_8);
     } catch (IOException e) {
       throw new RuntimeException("Error reading the file content", e);
     }
   }
 
+  private MultipartFile copyOf(MultipartFile content) {
+    try {
+      return new MockMultipartFile(
+          content.getName(),
+          content.getOriginalFilename(),
+          content.getContentType(),
+          content.getBytes());
+    } catch (IOException e) {
+      throw new RuntimeException("Error reading the file content: " + content.getName(), e);
+    }
+  }
+
   private MultipartFile toMultipartFile(InputStream assetResponse, String fileName) {
     try {
       return new MockMultipartFile(fileName, assetResponse);
@@ -296,13 +752,31 @@ public class CodeSnippetService {
     }
   }
 
-  private CodeSnippet findSnippetByAssetId(String assetId) {
+  CodeSnippet findSnippetByAssetId(String assetId) {
     return codeSnippetRepository
         .findCodeSnippetByAssetId(assetId)
         .orElseThrow(
             () -> new EntityNotFoundException("Snippet not found with assetId " + assetId));
   }
 
+  // Loads a whole page in one query and returns it in the order of the given ids
+  private List<CodeSnippet> findSnippetsByAssetIds(List<String> assetIds) {
+    if (assetIds.isEmpty()) {
+      return List.of();
+    }
+    Map<String, CodeSnippet> snippetsById =
+        codeSnippetRepository.findAllByAssetIdIn(assetIds).stream()
+            .collect(Collectors.toMap(CodeSnippet::getAssetId, Function.identity()));
+
+    List<String> missingIds =
+        assetIds.stream().filter(assetId -> !snippetsById.containsKey(assetId)).toList();
+    if (!missingIds.isEmpty()) {
+      throw new EntityNotFoundException("Snippets not found with assetIds " + missingIds);
+    }
+
+    return assetIds.stream().map(snippetsById::get).toList();
+  }
+
   private void createDefaultRulesIfNeeded(String userId) {
     List<LintingRule> lintingRules = lintingRuleRepository.findAllByUserId(userId);
     List<FormatterRule> formatterRules = formatterRuleRepository.findAllByUserId(userId);
@@ -322,7 +796,10 @@ public class CodeSnippetService {
   private void compileSnippet(SnippetReceivedDto snippet) {
     ResponseEntity<String> compileSnippetResponse =
         printscriptManager.compile(
-            snippet.getContentInString(), snippet.getLanguageInEnum(), snippet.getVersion());
+            ContentDigest.sha256(snippet.openContent()),
+            snippet::openContent,
+            snippet.getLanguageInEnum(),
+            snippet.getVersion());
     if (compileSnippetResponse.getStatusCode().isError()) {
       throw new HttpServerErrorException(compileSnippetResponse.getStatusCode());
     }
@@ -368,6 +845,29 @@ public class CodeSnippetService {
     formatterProducer.publishEvent(convertToSnippetSendDto(codeSnippet, content, result, userId));
   }
 
+  // Sent once the transaction commits, so the result can never arrive before the row it updates
+  private void publishCompileJob(MultipartFile content, CodeSnippet codeSnippet) {
+    CompileJobDto compileJob =
+        CompileJobDto.builder()
+            .assetId(codeSnippet.getAssetId())
+            .contentHash(codeSnippet.getContentHash())
+            .language(codeSnippet.getLanguage().name())
+            .version(codeSnippet.getVersion())
+            .content(getContentFromMultipartFile(content))
+            .build();
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      compileProducer.publishEvent(compileJob);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(
+        new TransactionSynchronization() {
+          @Override
+          public void afterCommit() {
+            compileProducer.publishEvent(compileJob);
+          }
+        });
+  }
+
   public List<LanguagesDto> getLanguages() {
     List<Languages> languages = languagesRepository.findAll();
     return languages.stream()
@@ -447,7 +947,7 @@ public class CodeSnippetService {
     return "Test cases deleted successfully";
   }
 
-  public String test(String assetId, TestCaseDto testCaseDto) {
+  public TestResultDto test(String assetId, TestCaseDto testCaseDto) {
 
     boolean canAccess = canWriteSnippet(assetId);
     if (!canAccess) {
@@ -456,22 +956,118 @@ public class CodeSnippetService {
           new Exception("You don't have permission to write this snippet"));
     }
 
-    InputStream assetResponse = getAsset(assetId);
-
     CodeSnippet codeSnippet = findSnippetByAssetId(assetId);
     String language = codeSnippet.getLanguage().name();
     String version = codeSnippet.getVersion();
     List<String> input = testCaseDto.getInput();
     List<String> output = testCaseDto.getOutput();
 
-    ResponseEntity<String> testResponse =
-        printscriptManager.test(assetResponse, language, version, input, output);
+    // Rows saved before content hashes were stored need the content to build the key
+    if (codeSnippet.getContentHash() == null) {
+      byte[] content = readAsset(assetId);
+      return printscriptManager.test(
+          ContentDigest.sha256(content),
+          () -> new ByteArrayInputStream(content),
+          language,
+          version,
+          input,
+          output);
+    }
+    return printscriptManager.test(
+        codeSnippet.getContentHash(), () -> getAsset(assetId), language, version, input, output);
+  }
+
+  // Runs every test case of the snippet with one permission check and at most one download.
+  // A failing case is reported in its result instead of stopping the others.
+  public TestSuiteResultDto runAllTests(String assetId) {
+    boolean canAccess = canWriteSnippet(assetId);
+    if (!canAccess) {
+      throw new PermissionDeniedDataAccessException(
+          "You don't have permission to write this snippet",
+          new Exception("You don't have permission to write this snippet"));
+    }
 
-    if (testResponse.getStatusCode().isError()) {
-      throw new HttpServerErrorException(testResponse.getStatusCode());
+    long start = System.nanoTime();
+    CodeSnippet codeSnippet = findSnippetByAssetId(assetId);
+    String language = codeSnippet.getLanguage().name();
+    String version = codeSnippet.getVersion();
+    List<TestCase> testCases = testCaseRepository.findByAssetId(assetId);
+
+    // FutureTask runs once; concurrent cases wait for the same download
+    FutureTask<byte[]> download = new FutureTask<>(() -> readAsset(assetId));
+    String contentDigest = codeSnippet.getContentHash();
+    if (contentDigest == null) {
+      download.run();
+      contentDigest = ContentDigest.sha256(awaitContent(download));
     }
+    String digest = contentDigest;
+    Supplier<InputStream> content =
+        () -> {
+          download.run();
+          return new ByteArrayInputStream(awaitContent(download));
+        };
+
+    List<TestCaseResultDto> results =
+        fanOutExecutor.mapOrdered(
+            testCases,
+            testCase -> runTestCase(testCase, digest, content, language, version),
+            testConcurrency);
+
+    return TestSuiteResultDto.builder()
+        .assetId(assetId)
+        .total(results.size())
+        .errors((int) results.stream().filter(result -> result.getError() != null).count())
+        .cached((int) results.stream().filter(TestCaseResultDto::isCached).count())
+        .durationMs((System.nanoTime() - start) / 1_000_000)
+        .results(results)
+        .build();
+  }
 
-    return testResponse.getBody();
+  private TestCaseResultDto runTestCase(
+      TestCase testCase,
+      String contentDigest,
+      Supplier<InputStream> content,
+      String language,
+      String version) {
+    long start = System.nanoTime();
+    TestCaseResultDto.TestCaseResultDtoBuilder result =
+        TestCaseResultDto.builder().testId(testCase.getId()).name(testCase.getName());
+    try {
+      TestResultDto testResult =
+          printscriptManager.test(
+              contentDigest,
+              content,
+              language,
+              version,
+              testCase.getInputs(),
+              testCase.getOutputs());
+      result.result(testResult.getResult()).cached(testResult.isCached());
+    } catch (RuntimeException e) {
+      result.error(e.getMessage());
+    }
+    return result.durationMs((System.nanoTime() - start) / 1_000_000).build();
+  }
+
+  private byte[] awaitContent(FutureTask<byte[]> download) {
+    try {
+      return download.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while reading the snippet content", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private byte[] readAsset(String assetId) {
+    try (InputStream assetResponse = getAsset(assetId)) {
+      return assetResponse.readAllBytes();
+    } catch (IOException e) {
+      throw new RuntimeException("Error reading the file content: " + assetId, e);
+    }
   }
 
   private List<TestCaseDto> convertToTestCaseDto(List<TestCase> testCases) {
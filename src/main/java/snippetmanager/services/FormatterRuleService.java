@@ -83,7 +83,7 @@ public class FormatterRuleService {
   }
 
   private void publishAllSnippetsToRedis(String userId) {
-    codeSnippetService.getAllOwnSnippets(userId).forEach(formatterProducer::publishEvent);
+    codeSnippetService.forEachOwnSnippet(userId, formatterProducer::publishEvent);
   }
 
   private void createAndSaveRule(String userId, RuleDto ruleDto) {
@@ -125,7 +125,7 @@ public class LintingRuleService {
   }
 
   private void publishAllSnippetsToRedis(String userId) {
-    codeSnippetService.getAllOwnSnippets(userId).forEach(lintProducer::publishEvent);
+    codeSnippetService.forEachOwnSnippet(userId, lintProducer::publishEvent);
   }
 
   private void createAndSaveRule(String userId, RuleDto ruleDto) {
@@ -0,0 +1,183 @@
+package snippetmanager.services;
+
+import java.util.concurrent.Callable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.PermissionDeniedDataAccessException;
+import org.springframework.security.concurrent.DelegatingSecurityContextCallable;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import snippetmanager.model.dtos.AllSnippetsSendDto;
+import snippetmanager.model.dtos.SnippetReceivedDto;
+import snippetmanager.model.dtos.SnippetSendDto;
+import snippetmanager.model.entities.CodeSnippet;
+import snippetmanager.util.ContentDigest;
+import snippetmanager.util.EtagMatcher;
+import snippetmanager.util.enums.PermissionType;
+import snippetmanager.util.enums.SnippetView;
+import snippetmanager.webservice.asset.AssetManager;
+import snippetmanager.webservice.permission.PermissionManager;
+import snippetmanager.webservice.printscript.PrintscriptManager;
+
+// Non-blocking versions of the CodeSnippetService reads, built from the manager Monos. JPA stays
+// blocking, so repository work is moved to the bounded elastic scheduler instead.
+@Component
+@Profile("reactive")
+public class ReactiveCodeSnippetService {
+  private static final String ASSET_CONTAINER = "snippets";
+
+  private final CodeSnippetService codeSnippetService;
+
+  private final PermissionManager permissionManager;
+
+  private final AssetManager assetManager;
+
+  private final PrintscriptManager printscriptManager;
+
+  private final UserService userService;
+
+  private final int maxConcurrency;
+
+  public ReactiveCodeSnippetService(
+      CodeSnippetService codeSnippetService,
+      PermissionManager permissionManager,
+      AssetManager assetManager,
+      PrintscriptManager printscriptManager,
+      UserService userService,
+      @Value("${snippet.fan-out.max-concurrency:8}") int maxConcurrency) {
+    this.codeSnippetService = codeSnippetService;
+    this.permissionManager = permissionManager;
+    this.assetManager = assetManager;
+    this.printscriptManager = printscriptManager;
+    this.userService = userService;
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  public Mono<String> createSnippet(SnippetReceivedDto snippet, String userId) {
+    if (codeSnippetService.compilesAsynchronously()) {
+      return offload(() -> codeSnippetService.createSnippet(snippet, userId));
+    }
+    return printscriptManager
+        .compileAsync(
+            ContentDigest.sha256(snippet.openContent()),
+            snippet::openContent,
+            snippet.getLanguageInEnum(),
+            snippet.getVersion())
+        .flatMap(
+            response ->
+                response.getStatusCode().isError()
+                    ? Mono.<String>error(new HttpServerErrorException(response.getStatusCode()))
+                    : offload(() -> codeSnippetService.saveCompiledSnippet(snippet, userId)));
+  }
+
+  public Mono<SnippetSendDto> getSnippet(String assetId, String userId) {
+    return getSnippet(assetId, userId, null).map(CodeSnippetService.Tagged::body);
+  }
+
+  // One permission check and one lookup for both the ETag and the body. Without If-None-Match
+  // the content is downloaded alongside the lookup; with it, only once the ETag has changed.
+  public Mono<CodeSnippetService.Tagged<SnippetSendDto>> getSnippet(
+      String assetId, String userId, String ifNoneMatch) {
+    if (ifNoneMatch == null) {
+      return requireRead(assetId)
+          .then(
+              Mono.zip(findSnippet(assetId), assetManager.getAssetAsync(ASSET_CONTAINER, assetId)))
+          .map(loaded -> tagged(loaded.getT1(), loaded.getT2(), userId));
+    }
+    return requireRead(assetId)
+        .then(findSnippet(assetId))
+        .flatMap(
+            codeSnippet -> {
+              String etag = codeSnippetService.etag(codeSnippet, userId);
+              if (EtagMatcher.matches(ifNoneMatch, etag)) {
+                return Mono.just(new CodeSnippetService.Tagged<SnippetSendDto>(etag, null));
+              }
+              return assetManager
+                  .getAssetAsync(ASSET_CONTAINER, assetId)
+                  .map(content -> tagged(codeSnippet, content, userId));
+            });
+  }
+
+  public Mono<AllSnippetsSendDto> getAllSnippets(
+      Integer from, Integer to, String userId, SnippetView view) {
+    int offset = codeSnippetService.pageOffset(from);
+    int pageSize = codeSnippetService.pageSize(offset, to);
+    return offload(() -> userService.createUser(userId))
+        .then(
+            permissionManager.getSnippetsUserWithPermissionAsync(
+                offset, offset + pageSize, PermissionType.READ.toString()))
+        .flatMap(
+            response ->
+                offload(
+                    () -> codeSnippetService.toSnippetPage(response.getBody(), offset, pageSize)))
+        .flatMap(
+            page ->
+                Flux.range(0, page.snippets().size())
+                    .flatMapSequential(
+                        index -> toSnippetSendDto(page, index, userId, view), maxConcurrency)
+                    .collectList()
+                    .map(
+                        snippets ->
+                            AllSnippetsSendDto.builder()
+                                .snippets(snippets)
+                                .maxSnippets(page.maxSnippets())
+                                .nextCursor(page.nextCursor())
+                                .build()));
+  }
+
+  // Runs blocking work on the bounded elastic scheduler, with the caller's security context
+  public <T> Mono<T> offload(Callable<T> work) {
+    Callable<T> secured =
+        DelegatingSecurityContextCallable.create(work, SecurityContextHolder.getContext());
+    return Mono.fromCallable(secured).subscribeOn(Schedulers.boundedElastic());
+  }
+
+  public Mono<Void> offload(Runnable work) {
+    return offload(
+            () -> {
+              work.run();
+              return Boolean.TRUE;
+            })
+        .then();
+  }
+
+  private Mono<SnippetSendDto> toSnippetSendDto(
+      CodeSnippetService.SnippetPage page, int index, String userId, SnippetView view) {
+    CodeSnippet snippet = page.snippets().get(index);
+    Mono<SnippetSendDto> snippetSendDto =
+        view == SnippetView.SUMMARY
+            ? Mono.fromSupplier(() -> codeSnippetService.getSnippetSummaryDto(userId, snippet))
+            : assetManager
+                .getAssetAsync(ASSET_CONTAINER, snippet.getAssetId())
+                .map(content -> codeSnippetService.toSnippetSendDto(snippet, content, userId));
+    return snippetSendDto.doOnNext(
+        snippetDto -> snippetDto.setAuthor(codeSnippetService.authorOf(page, index)));
+  }
+
+  private CodeSnippetService.Tagged<SnippetSendDto> tagged(
+      CodeSnippet codeSnippet, byte[] content, String userId) {
+    return new CodeSnippetService.Tagged<>(
+        codeSnippetService.etag(codeSnippet, userId),
+        codeSnippetService.toSnippetSendDto(codeSnippet, content, userId));
+  }
+
+  private Mono<Void> requireRead(String assetId) {
+    return permissionManager
+        .canReadAsync(assetId)
+        .filter(Boolean::booleanValue)
+        .switchIfEmpty(
+            Mono.error(
+                new PermissionDeniedDataAccessException(
+                    "You don't have permission to access this snippet",
+                    new Exception("You don't have permission to access this snippet"))))
+        .then();
+  }
+
+  private Mono<CodeSnippet> findSnippet(String assetId) {
+    return offload(() -> codeSnippetService.findSnippetByAssetId(assetId));
+  }
+}
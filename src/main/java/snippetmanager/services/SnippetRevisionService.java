@@ -0,0 +1,103 @@
+package snippetmanager.services;
+
+import jakarta.persistence.EntityNotFoundException;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import snippetmanager.model.dtos.SnippetRevisionDto;
+import snippetmanager.model.entities.SnippetRevision;
+import snippetmanager.repositories.CodeSnippetRepository;
+import snippetmanager.repositories.SnippetRevisionRepository;
+import snippetmanager.util.ContentDigest;
+import snippetmanager.util.LineDelta;
+
+// Revision log per snippet. Every checkpoint-interval revisions the full content is stored; in
+// between only a line delta against the previous revision is kept, so rebuilding any revision
+// applies at most checkpoint-interval - 1 deltas.
+@Component
+public class SnippetRevisionService {
+  private final SnippetRevisionRepository snippetRevisionRepository;
+
+  private final CodeSnippetRepository codeSnippetRepository;
+
+  private final int checkpointInterval;
+
+  public SnippetRevisionService(
+      SnippetRevisionRepository snippetRevisionRepository,
+      CodeSnippetRepository codeSnippetRepository,
+      @Value("${snippet.revisions.checkpoint-interval:10}") int checkpointInterval) {
+    this.snippetRevisionRepository = snippetRevisionRepository;
+    this.codeSnippetRepository = codeSnippetRepository;
+    this.checkpointInterval = checkpointInterval;
+  }
+
+  // Two updates of one snippet would otherwise both read the same latest revision and collide on
+  // the next number, so the snippet row is locked first. updateSnippet already holds the lock
+  // from its start; taking it again here covers the other callers.
+  @Transactional
+  public int recordRevision(String assetId, String userId, String content) {
+    codeSnippetRepository.lockByAssetId(assetId);
+    Optional<SnippetRevision> latest =
+        snippetRevisionRepository.findTopByAssetIdOrderByRevisionNumberDesc(assetId);
+    int revisionNumber = latest.map(revision -> revision.getRevisionNumber() + 1).orElse(1);
+
+    SnippetRevision revision = new SnippetRevision();
+    revision.setAssetId(assetId);
+    revision.setRevisionNumber(revisionNumber);
+    revision.setUserId(userId);
+    revision.setContentHash(ContentDigest.sha256(content));
+    if (latest.isEmpty() || (revisionNumber - 1) % checkpointInterval == 0) {
+      revision.setCheckpoint(true);
+      revision.setContent(content);
+    } else {
+      String previous = rebuild(assetId, revisionNumber - 1);
+      revision.setCheckpoint(false);
+      revision.setContent(LineDelta.diff(previous, content));
+    }
+    snippetRevisionRepository.save(revision);
+    return revisionNumber;
+  }
+
+  public List<SnippetRevisionDto> getRevisions(String assetId) {
+    return snippetRevisionRepository.findAllByAssetIdOrderByRevisionNumberAsc(assetId).stream()
+        .map(
+            revision ->
+                SnippetRevisionDto.builder()
+                    .revision(revision.getRevisionNumber())
+                    .contentHash(revision.getContentHash())
+                    .userId(revision.getUserId())
+                    .createdAt(revision.getCreatedAt())
+                    .build())
+        .toList();
+  }
+
+  public String rebuild(String assetId, int revisionNumber) {
+    SnippetRevision checkpoint =
+        snippetRevisionRepository
+            .findCheckpointAtOrBefore(assetId, revisionNumber)
+            .orElseThrow(
+                () ->
+                    new EntityNotFoundException(
+                        "Revision " + revisionNumber + " not found for snippet " + assetId));
+    List<SnippetRevision> deltas =
+        snippetRevisionRepository.findAllByAssetIdAndRevisionNumberBetweenOrderByRevisionNumberAsc(
+            assetId, checkpoint.getRevisionNumber() + 1, revisionNumber);
+    if (deltas.size() != revisionNumber - checkpoint.getRevisionNumber()) {
+      throw new EntityNotFoundException(
+          "Revision " + revisionNumber + " not found for snippet " + assetId);
+    }
+
+    String content = checkpoint.getContent();
+    for (SnippetRevision delta : deltas) {
+      content = LineDelta.apply(content, delta.getContent());
+    }
+    return content;
+  }
+
+  @Transactional
+  public void deleteRevisions(String assetId) {
+    snippetRevisionRepository.deleteAllByAssetId(assetId);
+  }
+}
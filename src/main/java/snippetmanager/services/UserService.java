@@ -1,9 +1,22 @@
 package snippetmanager.services;
 
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
@@ -16,9 +29,27 @@ import snippetmanager.repositories.UserRepository;
 public class UserService {
   private UserRepository userRepository;
 
+  // userId -> name, empty when the user is not stored yet. Only createUser writes users, so
+  // users created from another node are only seen once their empty entry expires, which is why
+  // those are kept for a much shorter time. Entries copy the name out of the row, so no managed
+  // entity outlives the session that loaded it.
+  private final LoadingCache<String, Optional<CachedUser>> usersCache;
+
   @Autowired
-  public UserService(UserRepository userRepository) {
+  public UserService(
+      UserRepository userRepository,
+      MeterRegistry meterRegistry,
+      @Value("${cache.users.max-size:10000}") long maxSize,
+      @Value("${cache.users.expire-after-write:30m}") Duration expireAfterWrite,
+      @Value("${cache.users.negative-ttl:5s}") Duration negativeTtl) {
     this.userRepository = userRepository;
+    this.usersCache =
+        Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfter(new UserExpiry(expireAfterWrite.toNanos(), negativeTtl.toNanos()))
+            .recordStats()
+            .build(new UserLoader());
+    CaffeineCacheMetrics.monitor(meterRegistry, usersCache, "users");
   }
 
   private String getUserEmail() {
@@ -35,17 +66,25 @@ public class UserService {
       user.setUserId(userId);
       user.setName(getUserEmail());
       userRepository.save(user);
+      usersCache.put(userId, Optional.of(CachedUser.of(user)));
     }
   }
 
   public String getUserName(String userId) {
-    Optional<User> userOptional = userRepository.findById(userId);
-    return userOptional.map(User::getName).orElse(null);
+    return usersCache.get(userId).map(CachedUser::name).orElse(null);
+  }
+
+  // Users that are not cached yet are loaded together with a single findAllById
+  public Map<String, String> getUserNames(Collection<String> userIds) {
+    Map<String, String> userNames = new HashMap<>();
+    usersCache
+        .getAll(userIds)
+        .forEach((userId, user) -> userNames.put(userId, user.map(CachedUser::name).orElse(null)));
+    return userNames;
   }
 
   private boolean checkIfUserExists(String userId) {
-    Optional<User> userOptional = userRepository.findById(userId);
-    return userOptional.isPresent();
+    return usersCache.get(userId).isPresent();
   }
 
   public List<UserDto> getUsers(String currentUserId) {
@@ -55,4 +94,48 @@ public class UserService {
         .map(user -> UserDto.builder().id(user.getUserId()).name(user.getName()).build())
         .toList();
   }
+
+  // The part of a user row the cache keeps; the name may be null
+  private record CachedUser(String name) {
+    static CachedUser of(User user) {
+      return new CachedUser(user.getName());
+    }
+  }
+
+  private record UserExpiry(long ttlNanos, long negativeTtlNanos)
+      implements Expiry<String, Optional<CachedUser>> {
+    @Override
+    public long expireAfterCreate(String userId, Optional<CachedUser> user, long currentTime) {
+      return user.isPresent() ? ttlNanos : negativeTtlNanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        String userId, Optional<CachedUser> user, long currentTime, long currentDuration) {
+      return user.isPresent() ? ttlNanos : negativeTtlNanos;
+    }
+
+    @Override
+    public long expireAfterRead(
+        String userId, Optional<CachedUser> user, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+
+  private class UserLoader implements CacheLoader<String, Optional<CachedUser>> {
+    @Override
+    public Optional<CachedUser> load(String userId) {
+      return userRepository.findById(userId).map(CachedUser::of);
+    }
+
+    @Override
+    public Map<String, Optional<CachedUser>> loadAll(Set<? extends String> userIds) {
+      Map<String, Optional<CachedUser>> users = new HashMap<>();
+      userRepository
+          .findAllById(new ArrayList<>(userIds))
+          .forEach(user -> users.put(user.getUserId(), Optional.of(CachedUser.of(user))));
+      userIds.forEach(userId -> users.putIfAbsent(userId, Optional.empty()));
+      return users;
+    }
+  }
 }
@@ -0,0 +1,21 @@
+package snippetmanager.util;
+
+// If-None-Match handling shared by the snippet controllers
+public class EtagMatcher {
+
+  public static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      String value = candidate.trim();
+      if (value.startsWith("W/")) {
+        value = value.substring(2);
+      }
+      if (value.equals("*") || value.equals("\"" + etag + "\"")) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,172 @@
+package snippetmanager.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.security.concurrent.DelegatingSecurityContextExecutorService;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// Runs independent per-item calls concurrently, keeping the caller's ordering. The security
+// context is copied onto the workers so the JWT is still forwarded to downstream services.
+//
+// Each call is scoped like a structured task scope: it returns only once every item has
+// finished, and the first failure cancels (interrupts) the items still running.
+@Component
+public class FanOutExecutor implements DisposableBean {
+  private final ThreadPoolTaskExecutor threadPool;
+
+  private final ExecutorService executor;
+
+  private final int maxConcurrency;
+
+  public FanOutExecutor(int poolSize, int maxConcurrency) {
+    this(poolSize, maxConcurrency, false);
+  }
+
+  // With spring.threads.virtual.enabled every item gets its own virtual thread and pool-size
+  // is ignored; max-concurrency still caps how many items of one call run at once.
+  @Autowired
+  public FanOutExecutor(
+      @Value("${snippet.fan-out.pool-size:16}") int poolSize,
+      @Value("${snippet.fan-out.max-concurrency:8}") int maxConcurrency,
+      @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+    if (virtualThreads) {
+      this.threadPool = null;
+      this.executor =
+          new DelegatingSecurityContextExecutorService(
+              Executors.newThreadPerTaskExecutor(
+                  Thread.ofVirtual().name("snippet-fan-out-", 0).factory()));
+    } else {
+      this.threadPool = new ThreadPoolTaskExecutor();
+      this.threadPool.setCorePoolSize(poolSize);
+      this.threadPool.setMaxPoolSize(poolSize);
+      this.threadPool.setThreadNamePrefix("snippet-fan-out-");
+      this.threadPool.initialize();
+      this.executor =
+          new DelegatingSecurityContextExecutorService(threadPool.getThreadPoolExecutor());
+    }
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  public <T, R> List<R> mapOrdered(List<T> items, Function<? super T, ? extends R> mapper) {
+    return mapOrdered(items, mapper, maxConcurrency);
+  }
+
+  // At most `concurrency` items of this call are in flight at once, so a single large page
+  // cannot take over the whole pool.
+  public <T, R> List<R> mapOrdered(
+      List<T> items, Function<? super T, ? extends R> mapper, int concurrency) {
+    List<R> results = new ArrayList<>(Collections.nCopies(items.size(), null));
+    run(items, mapper, concurrency, results::set);
+    return results;
+  }
+
+  // Hands each result to the consumer as soon as it is ready, in completion order. The consumer
+  // always runs on the calling thread, so it does not need to be thread-safe.
+  public <T, R> void forEachCompleted(
+      List<T> items, Function<? super T, ? extends R> mapper, Consumer<? super R> consumer) {
+    run(items, mapper, maxConcurrency, (index, result) -> consumer.accept(result));
+  }
+
+  // Starts a single call on a worker so the caller can overlap it with its own work. Unlike
+  // mapOrdered it is also used inside transactions, so the call must not touch the database.
+  public <R> CompletableFuture<R> submit(Supplier<R> call) {
+    if (maxConcurrency <= 1) {
+      try {
+        return CompletableFuture.completedFuture(call.get());
+      } catch (RuntimeException e) {
+        return CompletableFuture.failedFuture(e);
+      }
+    }
+    return CompletableFuture.supplyAsync(call, executor);
+  }
+
+  private record Completed<R>(int index, R result) {}
+
+  private <T, R> void run(
+      List<T> items,
+      Function<? super T, ? extends R> mapper,
+      int concurrency,
+      BiConsumer<Integer, ? super R> onResult) {
+    // Workers cannot join the caller's transaction, so work inside one stays on the caller
+    if (items.size() <= 1
+        || concurrency <= 1
+        || TransactionSynchronizationManager.isActualTransactionActive()) {
+      for (int index = 0; index < items.size(); index++) {
+        onResult.accept(index, mapper.apply(items.get(index)));
+      }
+      return;
+    }
+
+    CompletionService<Completed<R>> completionService = new ExecutorCompletionService<>(executor);
+    List<Future<Completed<R>>> running = new ArrayList<>(items.size());
+    int submitted = 0;
+    try {
+      while (submitted < Math.min(concurrency, items.size())) {
+        running.add(submit(completionService, items, submitted++, mapper));
+      }
+      for (int completed = 0; completed < items.size(); completed++) {
+        Completed<R> result = take(completionService);
+        if (submitted < items.size()) {
+          running.add(submit(completionService, items, submitted++, mapper));
+        }
+        onResult.accept(result.index(), result.result());
+      }
+    } finally {
+      // Only does anything when leaving early: a failed item, a failing consumer or an interrupt
+      running.forEach(future -> future.cancel(true));
+    }
+  }
+
+  private <T, R> Future<Completed<R>> submit(
+      CompletionService<Completed<R>> completionService,
+      List<T> items,
+      int index,
+      Function<? super T, ? extends R> mapper) {
+    T item = items.get(index);
+    return completionService.submit(() -> new Completed<>(index, mapper.apply(item)));
+  }
+
+  private <R> R take(CompletionService<R> completionService) {
+    try {
+      return completionService.take().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for results", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException runtimeException) {
+        throw runtimeException;
+      }
+      if (cause instanceof Error error) {
+        throw error;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (threadPool != null) {
+      threadPool.shutdown();
+    } else {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -9,6 +9,7 @@ import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import snippetmanager.webservice.BulkheadFullException;
 
 @ControllerAdvice
 public class GlobalExceptionHandler {
@@ -43,6 +44,13 @@ public class GlobalExceptionHandler {
     return new ResponseEntity<>(ex.getMessage(), HttpStatus.FORBIDDEN);
   }
 
+  // Handle BulkheadFullException globally (a downstream is at its concurrency limit)
+  @ExceptionHandler(BulkheadFullException.class)
+  @ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+  public ResponseEntity<String> handleBulkheadFullException(BulkheadFullException ex) {
+    return new ResponseEntity<>(ex.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+  }
+
   // Handle other exceptions globally
   @ExceptionHandler(Exception.class)
   @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
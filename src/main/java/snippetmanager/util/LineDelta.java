@@ -0,0 +1,153 @@
+package snippetmanager.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Line-based delta between two texts. A delta is a list of operations, one per line: "=n" copies
+// the next n lines of the base, "-n" skips them, and "+n" is followed by n lines to insert.
+public class LineDelta {
+  // Above this many cells the middle section is replaced wholesale instead of diffed
+  private static final long MAX_TABLE_CELLS = 4_000_000;
+
+  public static String diff(String base, String target) {
+    String[] from = base.split("\n", -1);
+    String[] to = target.split("\n", -1);
+
+    int prefix = 0;
+    while (prefix < from.length && prefix < to.length && from[prefix].equals(to[prefix])) {
+      prefix++;
+    }
+    int suffix = 0;
+    while (suffix < from.length - prefix
+        && suffix < to.length - prefix
+        && from[from.length - 1 - suffix].equals(to[to.length - 1 - suffix])) {
+      suffix++;
+    }
+
+    List<Operation> operations = new ArrayList<>();
+    copy(operations, prefix);
+    diffMiddle(operations, from, prefix, from.length - suffix, to, prefix, to.length - suffix);
+    copy(operations, suffix);
+
+    List<String> delta = new ArrayList<>();
+    for (Operation operation : operations) {
+      delta.add(operation.kind + String.valueOf(operation.count));
+      delta.addAll(operation.lines);
+    }
+    return String.join("\n", delta);
+  }
+
+  public static String apply(String base, String delta) {
+    if (delta.isEmpty()) {
+      return base;
+    }
+    String[] from = base.split("\n", -1);
+    List<String> result = new ArrayList<>();
+    String[] lines = delta.split("\n", -1);
+    int position = 0;
+    int index = 0;
+    while (index < lines.length) {
+      String operation = lines[index++];
+      int count = Integer.parseInt(operation.substring(1));
+      switch (operation.charAt(0)) {
+        case '=' -> {
+          for (int i = 0; i < count; i++) {
+            result.add(from[position++]);
+          }
+        }
+        case '-' -> position += count;
+        case '+' -> {
+          for (int i = 0; i < count; i++) {
+            result.add(lines[index++]);
+          }
+        }
+        default -> throw new IllegalArgumentException("Invalid delta operation " + operation);
+      }
+    }
+    return String.join("\n", result);
+  }
+
+  private static void diffMiddle(
+      List<Operation> operations,
+      String[] from,
+      int fromStart,
+      int fromEnd,
+      String[] to,
+      int toStart,
+      int toEnd) {
+    int rows = fromEnd - fromStart;
+    int columns = toEnd - toStart;
+    if (rows == 0 || columns == 0 || (long) (rows + 1) * (columns + 1) > MAX_TABLE_CELLS) {
+      remove(operations, rows);
+      for (int j = toStart; j < toEnd; j++) {
+        insert(operations, to[j]);
+      }
+      return;
+    }
+
+    // lengths[i][j] is the longest common subsequence of from[i..] and to[j..]
+    int[][] lengths = new int[rows + 1][columns + 1];
+    for (int i = rows - 1; i >= 0; i--) {
+      for (int j = columns - 1; j >= 0; j--) {
+        lengths[i][j] =
+            from[fromStart + i].equals(to[toStart + j])
+                ? lengths[i + 1][j + 1] + 1
+                : Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+      }
+    }
+
+    int i = 0;
+    int j = 0;
+    while (i < rows || j < columns) {
+      if (i < rows && j < columns && from[fromStart + i].equals(to[toStart + j])) {
+        copy(operations, 1);
+        i++;
+        j++;
+      } else if (j < columns && (i == rows || lengths[i][j + 1] >= lengths[i + 1][j])) {
+        insert(operations, to[toStart + j]);
+        j++;
+      } else {
+        remove(operations, 1);
+        i++;
+      }
+    }
+  }
+
+  private static void copy(List<Operation> operations, int count) {
+    if (count > 0) {
+      last(operations, '=').count += count;
+    }
+  }
+
+  private static void remove(List<Operation> operations, int count) {
+    if (count > 0) {
+      last(operations, '-').count += count;
+    }
+  }
+
+  private static void insert(List<Operation> operations, String line) {
+    Operation operation = last(operations, '+');
+    operation.count++;
+    operation.lines.add(line);
+  }
+
+  // Consecutive operations of the same kind are merged into one
+  private static Operation last(List<Operation> operations, char kind) {
+    if (!operations.isEmpty() && operations.get(operations.size() - 1).kind == kind) {
+      return operations.get(operations.size() - 1);
+    }
+    Operation operation = new Operation(kind);
+    operations.add(operation);
+    return operation;
+  }
+
+  private static class Operation {
+    private final char kind;
+    private int count;
+    private final List<String> lines = new ArrayList<>();
+
+    private Operation(char kind) {
+      this.kind = kind;
+    }
+  }
+}
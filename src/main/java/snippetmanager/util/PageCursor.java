@@ -0,0 +1,39 @@
+package snippetmanager.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Continuation token for the snippet listing. The permission service only pages by position, so
+// the token carries the next offset and the page size; clients must treat it as opaque.
+public record PageCursor(int offset, int pageSize) {
+  private static final String PREFIX = "v1:";
+
+  public String encode() {
+    String token = PREFIX + offset + ":" + pageSize;
+    return Base64.getUrlEncoder()
+        .withoutPadding()
+        .encodeToString(token.getBytes(StandardCharsets.UTF_8));
+  }
+
+  public static PageCursor decode(String cursor) {
+    try {
+      String token = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+      if (!token.startsWith(PREFIX)) {
+        throw new IllegalArgumentException("Invalid cursor");
+      }
+      String[] parts = token.substring(PREFIX.length()).split(":");
+      if (parts.length != 2) {
+        throw new IllegalArgumentException("Invalid cursor");
+      }
+      int offset = Integer.parseInt(parts[0]);
+      int pageSize = Integer.parseInt(parts[1]);
+      if (offset < 0 || pageSize <= 0) {
+        throw new IllegalArgumentException("Invalid cursor");
+      }
+      return new PageCursor(offset, pageSize);
+    } catch (IllegalArgumentException e) {
+      // NumberFormatException and Base64 errors are IllegalArgumentExceptions too
+      throw new IllegalArgumentException("Invalid cursor", e);
+    }
+  }
+}
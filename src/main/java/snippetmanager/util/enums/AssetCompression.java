@@ -0,0 +1,27 @@
+package snippetmanager.util.enums;
+
+// The id is persisted in every compressed asset, so it must never change or be reused
+public enum AssetCompression {
+  NONE(0),
+  GZIP(1),
+  DEFLATE(2);
+
+  private final byte id;
+
+  AssetCompression(int id) {
+    this.id = (byte) id;
+  }
+
+  public byte getId() {
+    return id;
+  }
+
+  public static AssetCompression fromId(byte id) {
+    return switch (id) {
+      case 0 -> NONE;
+      case 1 -> GZIP;
+      case 2 -> DEFLATE;
+      default -> throw new IllegalArgumentException("Unknown asset codec " + id);
+    };
+  }
+}
@@ -0,0 +1,7 @@
+package snippetmanager.util.enums;
+
+public enum CompileStatus {
+  VALIDATING,
+  VALID,
+  INVALID
+}
@@ -0,0 +1,6 @@
+package snippetmanager.util.enums;
+
+public enum SnippetView {
+  FULL,
+  SUMMARY
+}
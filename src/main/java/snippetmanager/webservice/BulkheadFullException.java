@@ -0,0 +1,8 @@
+package snippetmanager.webservice;
+
+// Thrown instead of queueing when a downstream already has its maximum of requests in flight
+public class BulkheadFullException extends RuntimeException {
+  public BulkheadFullException(String downstream) {
+    super("Too many concurrent requests to the " + downstream + " service");
+  }
+}
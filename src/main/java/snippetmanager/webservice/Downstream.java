@@ -0,0 +1,105 @@
+package snippetmanager.webservice;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+// One downstream service: its own connection pool and a bulkhead limiting requests in flight, so
+// a slow service cannot take connections or threads from the others. Pool metrics are exported
+// by Reactor Netty under reactor.netty.connection.provider.* tagged with the downstream name.
+class Downstream {
+  private final String name;
+
+  private final String url;
+
+  private final WebClient webClient;
+
+  private final ConnectionProvider connectionProvider;
+
+  private final Semaphore bulkhead;
+
+  private final Duration streamIdleTimeout;
+
+  private final Counter rejected;
+
+  Downstream(
+      String name,
+      DownstreamProperties.Pool pool,
+      WebClient.Builder webClientBuilder,
+      MeterRegistry meterRegistry) {
+    this.name = name;
+    this.url = pool.getUrl();
+    this.connectionProvider =
+        ConnectionProvider.builder(name)
+            .maxConnections(pool.getMaxConnections())
+            .pendingAcquireMaxCount(pool.getPendingAcquireMax())
+            .pendingAcquireTimeout(pool.getPendingAcquireTimeout())
+            .metrics(true)
+            .build();
+    HttpClient httpClient =
+        HttpClient.create(connectionProvider)
+            .option(
+                ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) pool.getConnectTimeout().toMillis())
+            .responseTimeout(pool.getResponseTimeout());
+    this.webClient =
+        webClientBuilder.clientConnector(new ReactorClientHttpConnector(httpClient)).build();
+    this.bulkhead = new Semaphore(pool.getMaxConcurrentRequests());
+    this.streamIdleTimeout = pool.getStreamIdleTimeout();
+    this.rejected =
+        Counter.builder("webclient.bulkhead.rejected")
+            .tag("downstream", name)
+            .description("Requests refused because the downstream was at its concurrency limit")
+            .register(meterRegistry);
+    Gauge.builder("webclient.bulkhead.available", bulkhead, Semaphore::availablePermits)
+        .tag("downstream", name)
+        .description("Requests that can still be started against the downstream")
+        .register(meterRegistry);
+  }
+
+  boolean serves(String requestUrl) {
+    return url != null && requestUrl.startsWith(url);
+  }
+
+  WebClient webClient() {
+    return webClient;
+  }
+
+  <T> Mono<T> limit(Mono<T> request) {
+    return Mono.defer(
+        () -> {
+          if (!bulkhead.tryAcquire()) {
+            rejected.increment();
+            return Mono.error(new BulkheadFullException(name));
+          }
+          return request.doFinally(signal -> bulkhead.release());
+        });
+  }
+
+  // A streamed body holds its permit until it completes, fails or is cancelled, so open streams
+  // count against the bulkhead like any other request. A reader that stops pulling without closing
+  // the stream would keep it forever; after streamIdleTimeout without a buffer the stream fails,
+  // which cancels the request and gives the permit back.
+  <T> Flux<T> limit(Flux<T> request) {
+    return Flux.defer(
+        () -> {
+          if (!bulkhead.tryAcquire()) {
+            rejected.increment();
+            return Flux.error(new BulkheadFullException(name));
+          }
+          return request.timeout(streamIdleTimeout).doFinally(signal -> bulkhead.release());
+        });
+  }
+
+  void dispose() {
+    connectionProvider.dispose();
+  }
+}
@@ -0,0 +1,31 @@
+package snippetmanager.webservice;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+// Connection pool, timeouts and bulkhead size for each downstream service, keyed by name
+@Component
+@ConfigurationProperties(prefix = "webclient")
+@Getter
+@Setter
+public class DownstreamProperties {
+  private Map<String, Pool> downstreams = new LinkedHashMap<>();
+
+  @Getter
+  @Setter
+  public static class Pool {
+    private String url;
+    private int maxConnections = 50;
+    private int pendingAcquireMax = 100;
+    private Duration pendingAcquireTimeout = Duration.ofSeconds(5);
+    private Duration connectTimeout = Duration.ofSeconds(2);
+    private Duration responseTimeout = Duration.ofSeconds(30);
+    private int maxConcurrentRequests = 40;
+    private Duration streamIdleTimeout = Duration.ofSeconds(30);
+  }
+}
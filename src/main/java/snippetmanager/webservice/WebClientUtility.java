@@ -1,9 +1,16 @@
 package snippetmanager.webservice;
 
-import java.io.ByteArrayInputStream;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferLimitException;
 import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -20,12 +27,36 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Component
-public class WebClientUtility {
+public class WebClientUtility implements DisposableBean {
 
+  // Reactor context key for the bearer token. Reactive callers set it because their requests can
+  // be sent from a thread that has no SecurityContext.
+  public static final String TOKEN_CONTEXT_KEY = "snippetmanager.token";
+
+  // Used for any URL that is not under a configured downstream
   private final WebClient webClient;
 
-  public WebClientUtility(WebClient.Builder webClientBuilder) {
-    this.webClient = webClientBuilder.filter(authorizationHeaderFilter()).build();
+  private final List<Downstream> downstreams = new ArrayList<>();
+
+  private final long maxContentSize;
+
+  private final int prefetchBuffers;
+
+  public WebClientUtility(
+      WebClient.Builder webClientBuilder,
+      DownstreamProperties downstreamProperties,
+      MeterRegistry meterRegistry,
+      @Value("${asset.manager.max-content-size:10485760}") long maxContentSize,
+      @Value("${asset.manager.prefetch-buffers:4}") int prefetchBuffers) {
+    WebClient.Builder builder = webClientBuilder.filter(authorizationHeaderFilter());
+    this.webClient = builder.clone().build();
+    downstreamProperties
+        .getDownstreams()
+        .forEach(
+            (name, pool) ->
+                downstreams.add(new Downstream(name, pool, builder.clone(), meterRegistry)));
+    this.maxContentSize = maxContentSize;
+    this.prefetchBuffers = prefetchBuffers;
   }
 
   private String getCurrentToken() {
@@ -38,72 +69,127 @@ public class WebClientUtility {
 
   private ExchangeFilterFunction authorizationHeaderFilter() {
     return ExchangeFilterFunction.ofRequestProcessor(
-        clientRequest -> {
-          String token = getCurrentToken();
-          if (token != null) {
-            clientRequest =
-                ClientRequest.from(clientRequest)
-                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
-                    .build();
-          }
-          return Mono.just(clientRequest);
-        });
+        clientRequest ->
+            Mono.deferContextual(
+                context -> {
+                  String token = context.getOrDefault(TOKEN_CONTEXT_KEY, getCurrentToken());
+                  if (token == null) {
+                    return Mono.just(clientRequest);
+                  }
+                  return Mono.just(
+                      ClientRequest.from(clientRequest)
+                          .header(HttpHeaders.AUTHORIZATION, "Bearer " + token)
+                          .build());
+                }));
   }
 
+  // Reads the body as it arrives, with at most prefetch-buffers requested ahead of the reader.
+  // Closing the stream early cancels the request and releases any buffer not yet read.
   public InputStream getInputStream(String url) {
-    Flux<DataBuffer> dataBufferFlux =
-        this.webClient
-            .get()
-            .uri(url)
-            .accept(MediaType.TEXT_EVENT_STREAM)
-            .retrieve()
-            .bodyToFlux(DataBuffer.class);
-
-    System.out.println("DataBufferFlux: " + dataBufferFlux);
-
-    byte[] byteArray = getBytes(dataBufferFlux);
+    return DataBufferUtils.subscriberInputStream(
+        limitSize(getBody(url), maxContentSize), prefetchBuffers);
+  }
 
-    System.out.println("ByteArray: " + byteArray);
+  // Non-blocking read of the whole body, under the same size limit as getInputStream
+  public Mono<byte[]> getBytesAsync(String url) {
+    return DataBufferUtils.join(limitSize(getBody(url), maxContentSize))
+        .map(
+            dataBuffer -> {
+              byte[] content = new byte[dataBuffer.readableByteCount()];
+              dataBuffer.read(content);
+              DataBufferUtils.release(dataBuffer);
+              return content;
+            })
+        .defaultIfEmpty(new byte[0]);
+  }
 
-    return new ByteArrayInputStream(byteArray);
+  private Flux<DataBuffer> getBody(String url) {
+    return stream(
+        url,
+        client ->
+            client
+                .get()
+                .uri(url)
+                .accept(MediaType.APPLICATION_OCTET_STREAM, MediaType.ALL)
+                .retrieve()
+                .bodyToFlux(DataBuffer.class));
   }
 
   public <T> Mono<ResponseEntity<T>> putFlux(
       Flux<DataBuffer> dataBufferFlux, String url, Class<T> responseType) {
-    return this.webClient
-        .put()
-        .uri(url)
-        .contentType(MediaType.APPLICATION_OCTET_STREAM)
-        .body(BodyInserters.fromPublisher(dataBufferFlux, DataBuffer.class))
-        .retrieve()
-        .toEntity(responseType);
+    return send(
+        url,
+        client ->
+            client
+                .put()
+                .uri(url)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(BodyInserters.fromPublisher(dataBufferFlux, DataBuffer.class))
+                .retrieve()
+                .toEntity(responseType));
   }
 
   public <T> Mono<ResponseEntity<T>> getAsync(
       String url, ParameterizedTypeReference<T> responseType) {
-    return webClient.get().uri(url).retrieve().toEntity(responseType);
+    return send(url, client -> client.get().uri(url).retrieve().toEntity(responseType));
   }
 
   public <T, R> Mono<ResponseEntity<R>> postAsync(String url, T body, Class<R> responseType) {
-    Mono<ResponseEntity<R>> response =
-        webClient.post().uri(url).bodyValue(body).retrieve().toEntity(responseType);
-    return response;
+    return send(
+        url, client -> client.post().uri(url).bodyValue(body).retrieve().toEntity(responseType));
   }
 
   public <T, R> Mono<ResponseEntity<R>> putAsync(String url, T body, Class<R> responseType) {
-    return webClient.put().uri(url).bodyValue(body).retrieve().toEntity(responseType);
+    return send(
+        url, client -> client.put().uri(url).bodyValue(body).retrieve().toEntity(responseType));
   }
 
   public <T> Mono<ResponseEntity<T>> deleteAsync(String url, Class<T> responseEntityClass) {
-    return webClient.delete().uri(url).retrieve().toEntity(responseEntityClass);
+    return send(
+        url, client -> client.delete().uri(url).retrieve().toEntity(responseEntityClass));
+  }
+
+  // Sends the request through the pool and bulkhead of the downstream that owns the URL
+  private <T> Mono<T> send(String url, Function<WebClient, Mono<T>> request) {
+    Downstream downstream = route(url);
+    if (downstream == null) {
+      return request.apply(webClient);
+    }
+    return downstream.limit(request.apply(downstream.webClient()));
+  }
+
+  private <T> Flux<T> stream(String url, Function<WebClient, Flux<T>> request) {
+    Downstream downstream = route(url);
+    if (downstream == null) {
+      return request.apply(webClient);
+    }
+    return downstream.limit(request.apply(downstream.webClient()));
+  }
+
+  private Downstream route(String url) {
+    for (Downstream downstream : downstreams) {
+      if (downstream.serves(url)) {
+        return downstream;
+      }
+    }
+    return null;
+  }
+
+  private Flux<DataBuffer> limitSize(Flux<DataBuffer> dataBufferFlux, long maxSize) {
+    AtomicLong received = new AtomicLong();
+    return dataBufferFlux.handle(
+        (dataBuffer, sink) -> {
+          if (received.addAndGet(dataBuffer.readableByteCount()) > maxSize) {
+            DataBufferUtils.release(dataBuffer);
+            sink.error(new DataBufferLimitException("Body exceeds " + maxSize + " bytes"));
+          } else {
+            sink.next(dataBuffer);
+          }
+        });
   }
 
-  private byte[] getBytes(Flux<DataBuffer> dataBufferFlux) {
-    DataBuffer dataBuffer = DataBufferUtils.join(dataBufferFlux).block();
-    assert dataBuffer != null;
-    byte[] byteArray = new byte[dataBuffer.readableByteCount()];
-    dataBuffer.read(byteArray);
-    DataBufferUtils.release(dataBuffer);
-    return byteArray;
+  @Override
+  public void destroy() {
+    downstreams.forEach(Downstream::dispose);
   }
 }
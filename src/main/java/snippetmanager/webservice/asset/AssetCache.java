@@ -0,0 +1,189 @@
+package snippetmanager.webservice.asset;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Local copy of asset contents, bounded by the number of bytes held. AssetManager writes through
+// on createAsset and invalidates on deleteAsset, so a single node always reads its own writes.
+// Misses fall through to the on-disk tier before AssetManager goes to the network. Content read
+// back from disk keeps the deadline it was written with instead of starting a new lifetime.
+//
+// Every put and invalidate moves the key's generation on. A download is only cached if the
+// generation is still the one read before it started, so a download that overlapped a write
+// cannot bring the old content back.
+//
+// Disk writes happen after the in-memory update, outside Caffeine's per-key lock, and are checked
+// against the generation under the disk tier's own lock. Until one finishes, reads on its stripe
+// skip the disk tier, which may still hold the content being replaced.
+@Component
+public class AssetCache {
+  // Keys share generations by hash; a shared stripe only costs a skipped fill
+  private static final int GENERATION_STRIPES = 1024;
+
+  private final Cache<String, CachedAsset> assets;
+
+  private final AssetDiskCache diskCache;
+
+  private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+  private final AtomicIntegerArray pendingDiskWrites = new AtomicIntegerArray(GENERATION_STRIPES);
+
+  private final long expireAfterWriteMillis;
+
+  public AssetCache(
+      MeterRegistry meterRegistry,
+      AssetDiskCache diskCache,
+      @Value("${cache.assets.max-bytes:67108864}") long maxBytes,
+      @Value("${cache.assets.expire-after-write:1h}") Duration expireAfterWrite) {
+    this.assets =
+        Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher((String key, CachedAsset asset) -> key.length() + asset.content().length)
+            .expireAfter(new UntilDeadline())
+            .recordStats()
+            .build();
+    this.diskCache = diskCache;
+    this.expireAfterWriteMillis = expireAfterWrite.toMillis();
+    CaffeineCacheMetrics.monitor(meterRegistry, assets, "assets");
+    Gauge.builder("cache.bytes", this, AssetCache::weightedSize)
+        .tag("cache", "assets")
+        .description("Bytes of asset content held in memory")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+  }
+
+  // Read before looking up or downloading an asset, and handed back to putIfAbsent
+  public long generation(String container, String assetKey) {
+    return generations.get(stripe(key(container, assetKey)));
+  }
+
+  public byte[] get(String container, String assetKey) {
+    String key = key(container, assetKey);
+    long generation = generations.get(stripe(key));
+    CachedAsset cached = assets.getIfPresent(key);
+    if (cached != null) {
+      return cached.content();
+    }
+    if (pendingDiskWrites.get(stripe(key)) > 0) {
+      return null;
+    }
+    AssetDiskCache.Entry entry = diskCache.get(key);
+    if (entry == null) {
+      return null;
+    }
+    fill(key, new CachedAsset(entry.content(), entry.expiresAtMillis()), generation);
+    return entry.content();
+  }
+
+  // Used after a download; never replaces content written by put in the meantime, and is dropped
+  // when a put or invalidate happened after the generation was read
+  public void putIfAbsent(String container, String assetKey, byte[] content, long generation) {
+    String key = key(container, assetKey);
+    if (fill(key, new CachedAsset(content, deadline()), generation)) {
+      diskCache.putIfAbsent(key, content, () -> generations.get(stripe(key)) == generation);
+    }
+  }
+
+  public void put(String container, String assetKey, byte[] content) {
+    String key = key(container, assetKey);
+    long generation = write(key, new CachedAsset(content, deadline()));
+    try {
+      diskCache.put(key, content, () -> generations.get(stripe(key)) == generation);
+    } finally {
+      pendingDiskWrites.decrementAndGet(stripe(key));
+    }
+  }
+
+  public void invalidate(String container, String assetKey) {
+    String key = key(container, assetKey);
+    write(key, null);
+    try {
+      diskCache.invalidate(key);
+    } finally {
+      pendingDiskWrites.decrementAndGet(stripe(key));
+    }
+  }
+
+  // Replaces the in-memory entry and returns the new generation; the caller owes the stripe one
+  // pending disk write
+  private long write(String key, CachedAsset asset) {
+    long[] generation = new long[1];
+    assets
+        .asMap()
+        .compute(
+            key,
+            (k, current) -> {
+              pendingDiskWrites.incrementAndGet(stripe(k));
+              generation[0] = generations.incrementAndGet(stripe(k));
+              return asset;
+            });
+    return generation[0];
+  }
+
+  // Runs under the same per-key lock as put and invalidate, so the generation check and the
+  // insert cannot be split by a write
+  private boolean fill(String key, CachedAsset asset, long generation) {
+    boolean[] filled = new boolean[1];
+    assets
+        .asMap()
+        .compute(
+            key,
+            (k, current) -> {
+              if (current != null || generations.get(stripe(k)) != generation) {
+                return current;
+              }
+              filled[0] = true;
+              return asset;
+            });
+    return filled[0];
+  }
+
+  private long deadline() {
+    return System.currentTimeMillis() + expireAfterWriteMillis;
+  }
+
+  private long weightedSize() {
+    return assets.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L);
+  }
+
+  private int stripe(String key) {
+    return Math.floorMod(key.hashCode(), GENERATION_STRIPES);
+  }
+
+  private String key(String container, String assetKey) {
+    return container + "/" + assetKey;
+  }
+
+  private record CachedAsset(byte[] content, long expiresAtMillis) {}
+
+  // Each entry lives until its own deadline; reads leave it alone
+  private static final class UntilDeadline implements Expiry<String, CachedAsset> {
+    @Override
+    public long expireAfterCreate(String key, CachedAsset asset, long currentTime) {
+      long remaining = asset.expiresAtMillis() - System.currentTimeMillis();
+      return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remaining));
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        String key, CachedAsset asset, long currentTime, long currentDuration) {
+      return expireAfterCreate(key, asset, currentTime);
+    }
+
+    @Override
+    public long expireAfterRead(
+        String key, CachedAsset asset, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
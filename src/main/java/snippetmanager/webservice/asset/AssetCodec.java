@@ -0,0 +1,96 @@
+package snippetmanager.webservice.asset;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import snippetmanager.util.enums.AssetCompression;
+
+// Optional compression of stored assets. Compressed assets start with a NUL-led marker followed by
+// the codec, which no source file starts with, so assets stored before compression was turned on
+// (or with another codec) are still read correctly. Only the configured containers are
+// compressed, since other services may read the remaining ones straight from the asset service.
+@Component
+public class AssetCodec {
+  private static final byte[] MARKER = {0, 'S', 'M', 'Z'};
+
+  private static final int HEADER_LENGTH = MARKER.length + 1;
+
+  private final AssetCompression compression;
+
+  private final int minSize;
+
+  private final List<String> containers;
+
+  public AssetCodec(
+      @Value("${asset.compression.codec:none}") String codec,
+      @Value("${asset.compression.min-size:1024}") int minSize,
+      @Value("${asset.compression.containers:snippets}") List<String> containers) {
+    this.compression = AssetCompression.valueOf(codec.toUpperCase());
+    this.minSize = minSize;
+    this.containers = containers;
+  }
+
+  public boolean shouldEncode(String container, long size) {
+    return compression != AssetCompression.NONE
+        && size >= minSize
+        && containers.contains(container);
+  }
+
+  // Falls back to the raw content when compressing does not make it smaller
+  public byte[] encode(byte[] content) throws IOException {
+    ByteArrayOutputStream encoded = new ByteArrayOutputStream(content.length / 2 + HEADER_LENGTH);
+    encoded.write(MARKER);
+    encoded.write(compression.getId());
+    try (OutputStream outputStream = compressor(encoded)) {
+      outputStream.write(content);
+    }
+    return encoded.size() < content.length ? encoded.toByteArray() : content;
+  }
+
+  // Unmarked content is passed through as it is, still streaming
+  public InputStream decode(InputStream inputStream) throws IOException {
+    PushbackInputStream pushback = new PushbackInputStream(inputStream, HEADER_LENGTH);
+    byte[] header = pushback.readNBytes(HEADER_LENGTH);
+    if (header.length < HEADER_LENGTH
+        || !Arrays.equals(header, 0, MARKER.length, MARKER, 0, MARKER.length)) {
+      pushback.unread(header);
+      return pushback;
+    }
+    AssetCompression codec;
+    try {
+      codec = AssetCompression.fromId(header[MARKER.length]);
+    } catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+    return switch (codec) {
+      case GZIP -> new GZIPInputStream(pushback);
+      case DEFLATE -> new InflaterInputStream(pushback);
+      case NONE -> pushback;
+    };
+  }
+
+  public byte[] decode(byte[] content) throws IOException {
+    try (InputStream inputStream = decode(new ByteArrayInputStream(content))) {
+      return inputStream.readAllBytes();
+    }
+  }
+
+  private OutputStream compressor(OutputStream outputStream) throws IOException {
+    return switch (compression) {
+      case GZIP -> new GZIPOutputStream(outputStream);
+      case DEFLATE -> new DeflaterOutputStream(outputStream);
+      case NONE -> outputStream;
+    };
+  }
+}
@@ -0,0 +1,511 @@
+package snippetmanager.webservice.asset;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Second cache tier for asset contents, below AssetCache. Records are appended to fixed-size,
+// memory-mapped segment files and located through an in-heap index of key -> (segment, offset).
+// The index is rebuilt by scanning the segments on startup. Segments are reclaimed oldest first:
+// compaction copies the live records of the oldest segment to the head of the log, and the oldest
+// segment is dropped when the log grows past max-segments.
+//
+// Records carry their write time and are treated as misses once older than
+// cache.assets.expire-after-write, the same lifetime as the memory tier, so a copy left from
+// before a restart or changed on another replica is not served indefinitely.
+//
+// Record layout:
+// magic | key length | value length | flags | written at | key | value | crc32(key, value)
+@Component
+public class AssetDiskCache implements DisposableBean {
+  // Bumped with the layout, so segments in an older layout read as empty
+  private static final int RECORD_MAGIC = 0x534d4132;
+  private static final int HEADER_SIZE = 21;
+  private static final int TRAILER_SIZE = 4;
+  private static final byte FLAG_TOMBSTONE = 1;
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".dat";
+
+  private final boolean enabled;
+  private final Path directory;
+  private final int segmentSize;
+  private final int maxSegments;
+  private final double compactionThreshold;
+  private final long expireAfterWriteMillis;
+
+  private final Map<String, Long> index = new ConcurrentHashMap<>();
+  private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+  private final Object writeLock = new Object();
+  private Segment activeSegment;
+  // Segment whose records compaction is copying; rolling must not drop it mid-scan
+  private Segment compacting;
+
+  private ScheduledExecutorService compactor;
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter corrupt;
+
+  @Autowired
+  public AssetDiskCache(
+      MeterRegistry meterRegistry,
+      @Value("${cache.assets.disk.enabled:false}") boolean enabled,
+      @Value("${cache.assets.disk.directory:/tmp/snippet-manager/assets}") String directory,
+      @Value("${cache.assets.disk.segment-size:67108864}") int segmentSize,
+      @Value("${cache.assets.disk.max-segments:16}") int maxSegments,
+      @Value("${cache.assets.disk.compaction-interval:5m}") Duration compactionInterval,
+      @Value("${cache.assets.disk.compaction-threshold:0.5}") double compactionThreshold,
+      @Value("${cache.assets.expire-after-write:1h}") Duration expireAfterWrite) {
+    this.enabled = enabled;
+    this.directory = Path.of(directory);
+    this.segmentSize = segmentSize;
+    this.maxSegments = Math.max(2, maxSegments);
+    this.compactionThreshold = compactionThreshold;
+    this.expireAfterWriteMillis = expireAfterWrite.toMillis();
+    this.hits =
+        Counter.builder("cache.disk.gets")
+            .tags("cache", "assets", "result", "hit")
+            .register(meterRegistry);
+    this.misses =
+        Counter.builder("cache.disk.gets")
+            .tags("cache", "assets", "result", "miss")
+            .register(meterRegistry);
+    this.corrupt =
+        Counter.builder("cache.disk.corrupt")
+            .tag("cache", "assets")
+            .register(meterRegistry);
+    Gauge.builder("cache.disk.entries", index, Map::size)
+        .tag("cache", "assets")
+        .register(meterRegistry);
+    Gauge.builder("cache.disk.segments", segments, Map::size)
+        .tag("cache", "assets")
+        .register(meterRegistry);
+
+    if (enabled) {
+      open();
+      compactor =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "asset-disk-cache-compactor");
+                thread.setDaemon(true);
+                return thread;
+              });
+      long intervalMillis = compactionInterval.toMillis();
+      compactor.scheduleWithFixedDelay(
+          this::compact, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public Entry get(String key) {
+    if (!enabled) {
+      return null;
+    }
+    Long location = index.get(key);
+    Segment segment = location == null ? null : segments.get(segmentId(location));
+    if (segment == null) {
+      misses.increment();
+      return null;
+    }
+    Entry entry = read(segment, offset(location), key);
+    if (entry == null || entry.expiresAtMillis() <= System.currentTimeMillis()) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return entry;
+  }
+
+  // The index is read without the write lock, so the location may already point at a record
+  // for another key or a tombstone; anything but a live, intact record for this key is a miss
+  private Entry read(Segment segment, int offset, String key) {
+    byte[] expectedKey = key.getBytes(StandardCharsets.UTF_8);
+    if (offset < 0 || offset + HEADER_SIZE + TRAILER_SIZE > segment.end) {
+      return null;
+    }
+    ByteBuffer buffer = segment.buffer.duplicate();
+    buffer.position(offset);
+    if (buffer.getInt() != RECORD_MAGIC) {
+      return null;
+    }
+    int keyLength = buffer.getInt();
+    int valueLength = buffer.getInt();
+    byte flags = buffer.get();
+    long writtenAt = buffer.getLong();
+    if (flags != 0
+        || keyLength != expectedKey.length
+        || valueLength < 0
+        || (long) offset + HEADER_SIZE + keyLength + valueLength + TRAILER_SIZE > segment.end) {
+      return null;
+    }
+    byte[] keyBytes = new byte[keyLength];
+    buffer.get(keyBytes);
+    if (!Arrays.equals(keyBytes, expectedKey)) {
+      return null;
+    }
+    byte[] value = new byte[valueLength];
+    buffer.get(value);
+    CRC32 crc = new CRC32();
+    crc.update(keyBytes);
+    crc.update(value);
+    if (buffer.getInt() != (int) crc.getValue()) {
+      corrupt.increment();
+      dropCorrupt(key, location(segment.id, offset));
+      return null;
+    }
+    return new Entry(value, writtenAt + expireAfterWriteMillis);
+  }
+
+  public void put(String key, byte[] value) {
+    put(key, value, () -> true);
+  }
+
+  // Checked under the write lock: when the content is no longer current a tombstone is written
+  // instead, so a write that lost a race can only leave a miss behind
+  public void put(String key, byte[] value, BooleanSupplier current) {
+    if (!enabled) {
+      return;
+    }
+    synchronized (writeLock) {
+      if (current.getAsBoolean()) {
+        append(key, value, (byte) 0);
+      } else if (index.containsKey(key)) {
+        append(key, new byte[0], FLAG_TOMBSTONE);
+      }
+    }
+  }
+
+  public void putIfAbsent(String key, byte[] value) {
+    putIfAbsent(key, value, () -> true);
+  }
+
+  public void putIfAbsent(String key, byte[] value, BooleanSupplier current) {
+    if (!enabled) {
+      return;
+    }
+    synchronized (writeLock) {
+      if (!index.containsKey(key) && current.getAsBoolean()) {
+        append(key, value, (byte) 0);
+      }
+    }
+  }
+
+  public void invalidate(String key) {
+    if (!enabled) {
+      return;
+    }
+    synchronized (writeLock) {
+      if (index.containsKey(key)) {
+        append(key, new byte[0], FLAG_TOMBSTONE);
+      }
+    }
+  }
+
+  // Copies the live records of the oldest segments forward until the garbage ratio of the
+  // log drops below the threshold. Expired records are not copied, so they are reclaimed too.
+  // Sealed segments are never written again, so they are scanned without the write lock, which
+  // is only taken to move one record at a time and to drop the segment once it is empty.
+  void compact() {
+    while (true) {
+      Segment oldest;
+      synchronized (writeLock) {
+        if (segments.size() <= 1 || garbageRatio() <= compactionThreshold) {
+          return;
+        }
+        oldest = segments.firstEntry().getValue();
+        compacting = oldest;
+      }
+      try {
+        forEachRecord(
+            oldest,
+            (offset, key, value, flags, writtenAt) -> {
+              if (flags != 0) {
+                return;
+              }
+              synchronized (writeLock) {
+                Long location = index.get(key);
+                if (location != null && location == location(oldest.id, offset)) {
+                  if (isExpired(writtenAt)) {
+                    removeFromIndex(key);
+                  } else {
+                    append(key, value, (byte) 0, writtenAt);
+                  }
+                }
+              }
+            });
+      } finally {
+        synchronized (writeLock) {
+          compacting = null;
+          dropSegment(oldest);
+        }
+      }
+    }
+  }
+
+  // ** Internal methods
+
+  private void append(String key, byte[] value, byte flags) {
+    append(key, value, flags, System.currentTimeMillis());
+  }
+
+  // Compaction keeps the original write time, so copying a record does not extend its life
+  private void append(String key, byte[] value, byte flags, long writtenAt) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    int size = HEADER_SIZE + keyBytes.length + value.length + TRAILER_SIZE;
+    if (size > segmentSize) {
+      removeFromIndex(key);
+      return;
+    }
+    if (activeSegment.end + size > segmentSize) {
+      rollSegment();
+    }
+
+    Segment segment = activeSegment;
+    int offset = segment.end;
+    CRC32 crc = new CRC32();
+    crc.update(keyBytes);
+    crc.update(value);
+    ByteBuffer buffer = segment.buffer.duplicate();
+    buffer.position(offset);
+    buffer
+        .putInt(RECORD_MAGIC)
+        .putInt(keyBytes.length)
+        .putInt(value.length)
+        .put(flags)
+        .putLong(writtenAt)
+        .put(keyBytes)
+        .put(value)
+        .putInt((int) crc.getValue());
+    segment.end = offset + size;
+
+    if (flags == FLAG_TOMBSTONE) {
+      removeFromIndex(key);
+    } else {
+      segment.liveBytes.addAndGet(size);
+      Long previous = index.put(key, location(segment.id, offset));
+      releaseLocation(previous);
+    }
+  }
+
+  // Unless the key was written again since, so the next download can be stored in its place
+  private void dropCorrupt(String key, long location) {
+    synchronized (writeLock) {
+      Long current = index.get(key);
+      if (current != null && current == location) {
+        removeFromIndex(key);
+      }
+    }
+  }
+
+  private void removeFromIndex(String key) {
+    releaseLocation(index.remove(key));
+  }
+
+  private void releaseLocation(Long location) {
+    if (location == null) {
+      return;
+    }
+    Segment segment = segments.get(segmentId(location));
+    if (segment != null) {
+      segment.liveBytes.addAndGet(-recordSize(segment, offset(location)));
+    }
+  }
+
+  private boolean isExpired(long writtenAt) {
+    return writtenAt + expireAfterWriteMillis <= System.currentTimeMillis();
+  }
+
+  private int recordSize(Segment segment, int offset) {
+    ByteBuffer buffer = segment.buffer.duplicate();
+    buffer.position(offset + 4);
+    return HEADER_SIZE + buffer.getInt() + buffer.getInt() + TRAILER_SIZE;
+  }
+
+  private double garbageRatio() {
+    long written = 0;
+    long live = 0;
+    for (Segment segment : segments.values()) {
+      if (segment != activeSegment) {
+        written += segment.end;
+        live += segment.liveBytes.get();
+      }
+    }
+    return written == 0 ? 0 : 1 - (double) live / written;
+  }
+
+  private void rollSegment() {
+    activeSegment = mapSegment(activeSegment.id + 1);
+    segments.put(activeSegment.id, activeSegment);
+    while (segments.size() > maxSegments) {
+      dropSegment(
+          segments.values().stream()
+              .filter(segment -> segment != compacting)
+              .findFirst()
+              .orElseThrow());
+    }
+  }
+
+  private void dropSegment(Segment segment) {
+    segments.remove(segment.id);
+    index.values().removeIf(location -> segmentId(location) == segment.id);
+    try {
+      Files.deleteIfExists(segment.path);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error deleting cache segment " + segment.path, e);
+    }
+  }
+
+  // Rebuilds the index from the segment files left by a previous run
+  private void open() {
+    try {
+      Files.createDirectories(directory);
+      List<Path> files;
+      try (Stream<Path> paths = Files.list(directory)) {
+        files =
+            paths
+                .filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                .sorted()
+                .toList();
+      }
+      for (Path file : files) {
+        Segment segment = mapSegment(segmentIdOf(file));
+        segments.put(segment.id, segment);
+        segment.end =
+            forEachRecord(
+                segment,
+                (offset, key, value, flags, writtenAt) -> {
+                  if (flags == FLAG_TOMBSTONE || isExpired(writtenAt)) {
+                    removeFromIndex(key);
+                  } else {
+                    segment.liveBytes.addAndGet(recordSize(segment, offset));
+                    releaseLocation(index.put(key, location(segment.id, offset)));
+                  }
+                });
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error opening the asset disk cache in " + directory, e);
+    }
+    if (segments.isEmpty()) {
+      Segment segment = mapSegment(0);
+      segments.put(segment.id, segment);
+    }
+    activeSegment = segments.lastEntry().getValue();
+  }
+
+  // Visits every valid record and returns the offset after the last one. A torn or corrupt
+  // record ends the segment.
+  private int forEachRecord(Segment segment, RecordVisitor visitor) {
+    ByteBuffer buffer = segment.buffer.duplicate();
+    int offset = 0;
+    while (offset + HEADER_SIZE + TRAILER_SIZE <= segmentSize) {
+      buffer.position(offset);
+      if (buffer.getInt() != RECORD_MAGIC) {
+        break;
+      }
+      int keyLength = buffer.getInt();
+      int valueLength = buffer.getInt();
+      byte flags = buffer.get();
+      long writtenAt = buffer.getLong();
+      long size = (long) HEADER_SIZE + keyLength + valueLength + TRAILER_SIZE;
+      if (keyLength < 0 || valueLength < 0 || offset + size > segmentSize) {
+        break;
+      }
+      byte[] keyBytes = new byte[keyLength];
+      byte[] value = new byte[valueLength];
+      buffer.get(keyBytes).get(value);
+      CRC32 crc = new CRC32();
+      crc.update(keyBytes);
+      crc.update(value);
+      if (buffer.getInt() != (int) crc.getValue()) {
+        break;
+      }
+      visitor.visit(offset, new String(keyBytes, StandardCharsets.UTF_8), value, flags, writtenAt);
+      offset += (int) size;
+    }
+    return offset;
+  }
+
+  private Segment mapSegment(int id) {
+    Path path = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    try (FileChannel channel =
+        FileChannel.open(
+            path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      return new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+    } catch (IOException e) {
+      throw new UncheckedIOException("Error mapping cache segment " + path, e);
+    }
+  }
+
+  private int segmentIdOf(Path file) {
+    String name = file.getFileName().toString();
+    return Integer.parseInt(
+        name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+  }
+
+  private static long location(int segmentId, int offset) {
+    return ((long) segmentId << 32) | (offset & 0xffffffffL);
+  }
+
+  private static int segmentId(long location) {
+    return (int) (location >>> 32);
+  }
+
+  private static int offset(long location) {
+    return (int) location;
+  }
+
+  @Override
+  public void destroy() {
+    if (compactor != null) {
+      compactor.shutdownNow();
+    }
+    synchronized (writeLock) {
+      segments.values().forEach(segment -> segment.buffer.force());
+    }
+  }
+
+  // Content with the time it stops being served, so the memory tier can keep the same deadline
+  public record Entry(byte[] content, long expiresAtMillis) {}
+
+  private interface RecordVisitor {
+    void visit(int offset, String key, byte[] value, byte flags, long writtenAt);
+  }
+
+  private static final class Segment {
+    private final int id;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final AtomicLong liveBytes = new AtomicLong();
+    private volatile int end;
+
+    private Segment(int id, Path path, MappedByteBuffer buffer) {
+      this.id = id;
+      this.path = path;
+      this.buffer = buffer;
+    }
+  }
+}
@@ -1,14 +1,17 @@
 package snippetmanager.webservice.asset;
 
+import io.netty.buffer.PooledByteBufAllocator;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.channels.Channels;
+import java.io.OutputStream;
 import java.time.Duration;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
@@ -20,52 +23,135 @@ import snippetmanager.webservice.WebClientUtility;
 public class AssetManager {
   @Autowired WebClientUtility webClientUtility;
 
+  @Autowired AssetCache assetCache;
+
+  @Autowired AssetCodec assetCodec;
+
+  private static final DataBufferFactory BUFFER_FACTORY =
+      new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
   private final int timeOutInSeconds = 30;
 
+  @Value("${asset.manager.upload-chunk-size}")
+  private int uploadChunkSize;
+
   @Value("${asset.manager.url}")
   private String assetManagerUrl;
 
   public InputStream getAsset(String container, String assetKey) {
+    long generation = assetCache.generation(container, assetKey);
+    byte[] content = assetCache.get(container, assetKey);
+    if (content == null) {
+      content = fetchAsset(container, assetKey);
+      assetCache.putIfAbsent(container, assetKey, content, generation);
+    }
+    return new ByteArrayInputStream(content);
+  }
+
+  // Non-blocking counterpart of getAsset for the reactive stack; both share the cache
+  public Mono<byte[]> getAssetAsync(String container, String assetKey) {
+    return Mono.defer(
+        () -> {
+          long generation = assetCache.generation(container, assetKey);
+          byte[] cached = assetCache.get(container, assetKey);
+          if (cached != null) {
+            return Mono.just(cached);
+          }
+          String url = assetManagerUrl + "/v1/asset/" + container + "/" + assetKey;
+          return webClientUtility
+              .getBytesAsync(url)
+              .map(stored -> decode(container, assetKey, stored))
+              .doOnNext(
+                  content -> assetCache.putIfAbsent(container, assetKey, content, generation));
+        });
+  }
+
+  // Copies the asset to the stream as it arrives, so the content is never held in memory as a
+  // whole. Compressed assets are inflated on the way through.
+  public void writeAsset(String container, String assetKey, OutputStream outputStream)
+      throws IOException {
+    byte[] content = assetCache.get(container, assetKey);
+    if (content != null) {
+      outputStream.write(content);
+      return;
+    }
     String url = assetManagerUrl + "/v1/asset/" + container + "/" + assetKey;
-    return webClientUtility.getInputStream(url);
+    try (InputStream inputStream = assetCodec.decode(webClientUtility.getInputStream(url))) {
+      inputStream.transferTo(outputStream);
+    }
   }
 
   public ResponseEntity<String> createAsset(
       String container, String assetKey, MultipartFile content) {
     String url = assetManagerUrl + "/v1/asset/" + container + "/" + assetKey;
     Mono<ResponseEntity<String>> response =
-        webClientUtility.putFlux(convertMultipartFileToFlux(content), url, String.class);
-    return response.block(Duration.ofSeconds(timeOutInSeconds));
+        webClientUtility.putFlux(uploadBody(container, content), url, String.class);
+    ResponseEntity<String> result;
+    try {
+      result = response.block(Duration.ofSeconds(timeOutInSeconds));
+    } catch (RuntimeException e) {
+      // A timeout may still have stored the upload, so the cached copy is no longer known
+      assetCache.invalidate(container, assetKey);
+      throw e;
+    }
+    updateCache(container, assetKey, content, result);
+    return result;
   }
 
   public ResponseEntity<String> deleteAsset(String container, String assetKey) {
     String url = assetManagerUrl + "/v1/asset/" + container + "/" + assetKey;
     Mono<ResponseEntity<String>> response = webClientUtility.deleteAsync(url, String.class);
-    return response.block(Duration.ofSeconds(timeOutInSeconds));
+    ResponseEntity<String> result = response.block(Duration.ofSeconds(timeOutInSeconds));
+    assetCache.invalidate(container, assetKey);
+    return result;
+  }
+
+  private byte[] fetchAsset(String container, String assetKey) {
+    String url = assetManagerUrl + "/v1/asset/" + container + "/" + assetKey;
+    try (InputStream inputStream = assetCodec.decode(webClientUtility.getInputStream(url))) {
+      return inputStream.readAllBytes();
+    } catch (IOException e) {
+      throw new RuntimeException("Error reading the asset: " + container + "/" + assetKey, e);
+    }
+  }
+
+  private byte[] decode(String container, String assetKey, byte[] stored) {
+    try {
+      return assetCodec.decode(stored);
+    } catch (IOException e) {
+      throw new RuntimeException("Error reading the asset: " + container + "/" + assetKey, e);
+    }
+  }
+
+  // Write-through on a successful upload. Error statuses fail the block above, so a missing
+  // response is the only other outcome, and it leaves the cached copy unknown.
+  private void updateCache(
+      String container, String assetKey, MultipartFile content, ResponseEntity<String> result) {
+    if (result == null) {
+      assetCache.invalidate(container, assetKey);
+      return;
+    }
+    try {
+      assetCache.put(container, assetKey, content.getBytes());
+    } catch (IOException e) {
+      assetCache.invalidate(container, assetKey);
+    }
   }
 
-  private Flux<DataBuffer> convertMultipartFileToFlux(MultipartFile multipartFile) {
+  private Flux<DataBuffer> uploadBody(String container, MultipartFile content) {
+    if (!assetCodec.shouldEncode(container, content.getSize())) {
+      return convertMultipartFileToFlux(content);
+    }
     try {
-      InputStream inputStream = multipartFile.getInputStream();
-      return Flux.generate(
-          sink -> {
-            try {
-              ByteBuffer byteBuffer = ByteBuffer.allocate(1024);
-              int readBytes = Channels.newChannel(inputStream).read(byteBuffer);
-
-              if (readBytes == -1) {
-                sink.complete();
-              } else {
-                byteBuffer.flip();
-                DataBuffer dataBuffer = new DefaultDataBufferFactory().wrap(byteBuffer);
-                sink.next(dataBuffer);
-              }
-            } catch (IOException e) {
-              sink.error(e);
-            }
-          });
+      return Flux.just(BUFFER_FACTORY.wrap(assetCodec.encode(content.getBytes())));
     } catch (IOException e) {
-      throw new RuntimeException("Error reading the file content: " + multipartFile.getName(), e);
+      throw new RuntimeException("Error compressing the file content: " + content.getName(), e);
     }
   }
+
+  // Chunks come from Netty's pooled allocator and are released by the client once written
+  Flux<DataBuffer> convertMultipartFileToFlux(MultipartFile multipartFile) {
+    return DataBufferUtils.readInputStream(
+        multipartFile::getInputStream, BUFFER_FACTORY, uploadChunkSize);
+  }
 }
@@ -0,0 +1,133 @@
+package snippetmanager.webservice.permission;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import snippetmanager.util.enums.PermissionType;
+
+// Short-lived (user, asset, permission) decisions. Denials are kept for a shorter time than grants
+// so that a snippet shared from another node becomes visible quickly.
+//
+// Decisions are indexed by asset so invalidate only touches that asset's keys. Every invalidate
+// moves the asset's generation on, and a decision is only stored if the generation is still the
+// one read before the check was sent, so a check that overlapped a revoke cannot cache the grant.
+@Component
+public class PermissionCache {
+  // Assets share generations by hash; a shared stripe only costs a skipped put
+  private static final int GENERATION_STRIPES = 1024;
+
+  private final Cache<PermissionKey, Boolean> decisions;
+
+  private final Map<String, Set<PermissionKey>> keysByAsset = new ConcurrentHashMap<>();
+
+  private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+  public PermissionCache(
+      MeterRegistry meterRegistry,
+      @Value("${cache.permissions.max-size:10000}") long maxSize,
+      @Value("${cache.permissions.ttl:30s}") Duration ttl,
+      @Value("${cache.permissions.negative-ttl:5s}") Duration negativeTtl) {
+    this.decisions =
+        Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfter(new DecisionExpiry(ttl.toNanos(), negativeTtl.toNanos()))
+            .evictionListener(
+                (PermissionKey key, Boolean allowed, RemovalCause cause) -> unindex(key))
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, decisions, "permissions");
+  }
+
+  public Boolean get(String userId, String assetId, PermissionType permission) {
+    return decisions.getIfPresent(new PermissionKey(userId, assetId, permission));
+  }
+
+  // Read before sending a check, and handed back to put with its answer
+  public long generation(String assetId) {
+    return generations.get(stripe(assetId));
+  }
+
+  // The key is indexed before the generation is checked, so an invalidate either sees the key or
+  // has already moved the generation on
+  public void put(
+      String userId, String assetId, PermissionType permission, boolean allowed, long generation) {
+    decisions
+        .asMap()
+        .compute(
+            new PermissionKey(userId, assetId, permission),
+            (key, current) -> {
+              index(key);
+              if (generations.get(stripe(assetId)) == generation) {
+                return allowed;
+              }
+              if (current == null) {
+                unindex(key);
+              }
+              return current;
+            });
+  }
+
+  public void invalidate(String assetId) {
+    generations.incrementAndGet(stripe(assetId));
+    Set<PermissionKey> keys = keysByAsset.remove(assetId);
+    if (keys != null) {
+      decisions.invalidateAll(keys);
+    }
+  }
+
+  private void index(PermissionKey key) {
+    keysByAsset.compute(
+        key.assetId(),
+        (assetId, keys) -> {
+          Set<PermissionKey> indexed = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+          indexed.add(key);
+          return indexed;
+        });
+  }
+
+  // Called under the key's lock, by put or by Caffeine when the decision expires or is evicted
+  private void unindex(PermissionKey key) {
+    keysByAsset.computeIfPresent(
+        key.assetId(),
+        (assetId, keys) -> {
+          keys.remove(key);
+          return keys.isEmpty() ? null : keys;
+        });
+  }
+
+  private int stripe(String assetId) {
+    return Math.floorMod(assetId.hashCode(), GENERATION_STRIPES);
+  }
+
+  private record PermissionKey(String userId, String assetId, PermissionType permission) {}
+
+  private record DecisionExpiry(long ttlNanos, long negativeTtlNanos)
+      implements Expiry<PermissionKey, Boolean> {
+    @Override
+    public long expireAfterCreate(PermissionKey key, Boolean allowed, long currentTime) {
+      return allowed ? ttlNanos : negativeTtlNanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(
+        PermissionKey key, Boolean allowed, long currentTime, long currentDuration) {
+      return allowed ? ttlNanos : negativeTtlNanos;
+    }
+
+    @Override
+    public long expireAfterRead(
+        PermissionKey key, Boolean allowed, long currentTime, long currentDuration) {
+      return currentDuration;
+    }
+  }
+}
@@ -6,6 +6,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Mono;
 import snippetmanager.model.dtos.AllSnippetsRecieveDto;
@@ -18,28 +21,41 @@ import snippetmanager.webservice.WebClientUtility;
 public class PermissionManager {
   @Autowired WebClientUtility webClientUtility;
 
+  @Autowired PermissionCache permissionCache;
+
   private final int timeOutInSeconds = 30;
 
   @Value("${permission.manager.url}")
   private String permissionManagerUrl;
 
   public boolean canRead(String snippetId) {
-    PermissionDto body =
-        PermissionDto.builder().assetId(snippetId).permission(PermissionType.READ).build();
-
-    return fetchPermissionData(body);
+    return hasPermission(snippetId, PermissionType.READ);
   }
 
   public boolean canWrite(String snippetId) {
-    System.out.println("Checking if user can write");
-    PermissionDto body =
-        PermissionDto.builder().assetId(snippetId).permission(PermissionType.READ_WRITE).build();
+    return hasPermission(snippetId, PermissionType.READ_WRITE);
+  }
 
-    return fetchPermissionData(body);
+  // Non-blocking checks for the reactive stack. The user id is passed in because the caller's
+  // thread may not carry a SecurityContext.
+  // The user is read when the Mono is built, on the request thread, so the cache is keyed by the
+  // same JWT subject as the blocking checks
+  public Mono<Boolean> canReadAsync(String snippetId) {
+    return hasPermissionAsync(getCurrentUserId(), snippetId, PermissionType.READ);
+  }
+
+  public Mono<Boolean> canWriteAsync(String snippetId) {
+    return hasPermissionAsync(getCurrentUserId(), snippetId, PermissionType.READ_WRITE);
   }
 
   public ResponseEntity<AllSnippetsRecieveDto> getSnippetsUserWithPermission(
       Integer from, Integer to, String permissionType) {
+    return getSnippetsUserWithPermissionAsync(from, to, permissionType)
+        .block(Duration.ofSeconds(timeOutInSeconds));
+  }
+
+  public Mono<ResponseEntity<AllSnippetsRecieveDto>> getSnippetsUserWithPermissionAsync(
+      Integer from, Integer to, String permissionType) {
     String url;
     if (from == null || to == null) {
       url = permissionManagerUrl + "/api/permission" + "?permissionType=" + permissionType;
@@ -54,9 +70,7 @@ public class PermissionManager {
               + "&permissionType="
               + permissionType;
     }
-    Mono<ResponseEntity<AllSnippetsRecieveDto>> response =
-        webClientUtility.getAsync(url, new ParameterizedTypeReference<>() {});
-    return response.block(Duration.ofSeconds(timeOutInSeconds));
+    return webClientUtility.getAsync(url, new ParameterizedTypeReference<>() {});
   }
 
   public ResponseEntity<AllSnippetsSendDto> getSnippetsUserCanWrite(String permissionType) {
@@ -72,33 +86,66 @@ public class PermissionManager {
     String url = permissionManagerUrl + "/api/permission";
     Mono<ResponseEntity<String>> response =
         webClientUtility.putAsync(url, permissionDto, String.class);
-    return response.block(Duration.ofSeconds(timeOutInSeconds));
+    try {
+      return response.block(Duration.ofSeconds(timeOutInSeconds));
+    } finally {
+      permissionCache.invalidate(snippetId);
+    }
   }
 
   public ResponseEntity<String> deletePermission(String snippetId) {
     String url = permissionManagerUrl + "/api/permission/" + snippetId;
     Mono<ResponseEntity<String>> response = webClientUtility.deleteAsync(url, String.class);
-    return response.block(Duration.ofSeconds(timeOutInSeconds));
+    try {
+      return response.block(Duration.ofSeconds(timeOutInSeconds));
+    } finally {
+      permissionCache.invalidate(snippetId);
+    }
   }
 
   public boolean canDelete(String snippetId) {
-    PermissionDto body =
-        PermissionDto.builder().assetId(snippetId).permission(PermissionType.DELETE).build();
+    return hasPermission(snippetId, PermissionType.DELETE);
+  }
 
-    return fetchPermissionData(body);
+  private boolean hasPermission(String snippetId, PermissionType permission) {
+    return Boolean.TRUE.equals(
+        hasPermissionAsync(getCurrentUserId(), snippetId, permission)
+            .block(Duration.ofSeconds(timeOutInSeconds)));
   }
 
-  private boolean fetchPermissionData(PermissionDto body) {
-    String url = permissionManagerUrl + "/api/permission";
-    Mono<ResponseEntity<Boolean>> response = webClientUtility.postAsync(url, body, Boolean.class);
+  private Mono<Boolean> hasPermissionAsync(
+      String userId, String snippetId, PermissionType permission) {
+    Boolean cached = userId == null ? null : permissionCache.get(userId, snippetId, permission);
+    if (cached != null) {
+      return Mono.just(cached);
+    }
 
-    ResponseEntity<Boolean> result = response.block(Duration.ofSeconds(timeOutInSeconds));
+    long generation = permissionCache.generation(snippetId);
+    PermissionDto body = PermissionDto.builder().assetId(snippetId).permission(permission).build();
+    return fetchPermissionData(body)
+        .doOnNext(
+            hasAccess -> {
+              if (userId != null) {
+                permissionCache.put(userId, snippetId, permission, hasAccess, generation);
+              }
+            })
+        .defaultIfEmpty(false);
+  }
 
-    if (result != null && result.getStatusCode() == HttpStatus.OK) {
-      Boolean hasAccess = result.getBody();
-      return hasAccess != null && hasAccess;
-    } else {
-      return false;
+  // Empty when the permission service did not give an answer, so it is not cached as a denial
+  private Mono<Boolean> fetchPermissionData(PermissionDto body) {
+    String url = permissionManagerUrl + "/api/permission";
+    return webClientUtility
+        .postAsync(url, body, Boolean.class)
+        .filter(result -> result.getStatusCode() == HttpStatus.OK)
+        .map(result -> Boolean.TRUE.equals(result.getBody()));
+  }
+
+  private String getCurrentUserId() {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    if (authentication != null && authentication.getPrincipal() instanceof Jwt jwt) {
+      return jwt.getClaimAsString("sub");
     }
+    return null;
   }
 }
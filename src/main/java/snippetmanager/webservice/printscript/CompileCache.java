@@ -0,0 +1,46 @@
+package snippetmanager.webservice.printscript;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.Objects;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import snippetmanager.util.enums.CodeLanguage;
+
+// Compile outcomes by (content digest, language, version), bounded by the bytes of the messages
+// held and scoped to the printscript version that produced them.
+@Component
+public class CompileCache {
+  private final VersionScopedCache<CompileKey, CompileOutcome> outcomes;
+
+  public CompileCache(
+      MeterRegistry meterRegistry,
+      @Value("${cache.compile.max-bytes:4194304}") long maxBytes,
+      @Value("${cache.compile.expire-after-write:6h}") Duration expireAfterWrite) {
+    this.outcomes =
+        new VersionScopedCache<>(
+            meterRegistry,
+            "compile",
+            "Bytes of compile outcomes held in memory",
+            maxBytes,
+            expireAfterWrite,
+            (key, outcome) -> outcome.weight());
+  }
+
+  public CompileOutcome get(CompileKey key, String serviceVersion) {
+    return outcomes.get(key, serviceVersion);
+  }
+
+  public void put(CompileKey key, CompileOutcome outcome, String serviceVersion) {
+    outcomes.put(key, outcome, serviceVersion);
+  }
+
+  public record CompileKey(String contentDigest, CodeLanguage language, String version) {}
+
+  // Either the service's answer to a successful compile or the message of a compile error
+  public record CompileOutcome(boolean compiled, String message) {
+    int weight() {
+      return 2 * Objects.requireNonNullElse(message, "").length();
+    }
+  }
+}
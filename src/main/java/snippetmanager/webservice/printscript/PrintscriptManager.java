@@ -1,100 +1,223 @@
 package snippetmanager.webservice.printscript;
 
-import java.io.BufferedReader;
-import java.io.IOException;
+import io.netty.buffer.PooledByteBufAllocator;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.security.concurrent.DelegatingSecurityContextCallable;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
-import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import snippetmanager.model.dtos.TestResultDto;
 import snippetmanager.util.enums.CodeLanguage;
+import snippetmanager.webservice.BulkheadFullException;
 import snippetmanager.webservice.WebClientUtility;
+import snippetmanager.webservice.printscript.CompileCache.CompileKey;
+import snippetmanager.webservice.printscript.CompileCache.CompileOutcome;
+import snippetmanager.webservice.printscript.TestResultCache.TestRunKey;
 
 @Component
 public class PrintscriptManager {
   @Autowired WebClientUtility webClientUtility;
 
+  @Autowired CompileCache compileCache;
+
+  @Autowired TestResultCache testResultCache;
+
+  @Autowired PrintscriptVersion printscriptVersion;
+
+  private static final DataBufferFactory BUFFER_FACTORY =
+      new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+  private static final MediaType CONTENT_TYPE =
+      new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8);
+
   private final int timeOutInSeconds = 30;
 
   @Value("${printscript.service.url}")
   private String printscriptServiceUrl;
 
-  public ResponseEntity<String> compile(String code, CodeLanguage language, String version) {
-    ByteArrayResource resource = new ByteArrayResource(code.getBytes());
+  @Value("${printscript.service.upload-chunk-size:65536}")
+  private int uploadChunkSize;
 
-    MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-    body.add("code", resource);
-    body.add("language", language);
-    body.add("version", version);
+  // Repeated saves of the same content are answered from the compile cache. The content is only
+  // opened when the request is sent, and is streamed from there without being copied.
+  public ResponseEntity<String> compile(
+      String contentDigest, Supplier<InputStream> content, CodeLanguage language, String version) {
+    CompileKey key = new CompileKey(contentDigest, language, version);
+    String serviceVersion = printscriptVersion.current();
+    CompileOutcome cached = compileCache.get(key, serviceVersion);
+    if (cached != null) {
+      return replay(cached);
+    }
 
     String url = printscriptServiceUrl + "/api/compile";
     try {
-      Mono<ResponseEntity<String>> response = webClientUtility.postAsync(url, body, String.class);
-      return response.block(Duration.ofSeconds(timeOutInSeconds));
-    } catch (WebClientResponseException.InternalServerError ex) {
-
-      String errorMessage = ex.getResponseBodyAsString();
-      throw new RuntimeException((errorMessage.isEmpty() ? ex.getStatusText() : errorMessage), ex);
+      Mono<ResponseEntity<String>> response =
+          webClientUtility.postAsync(url, compileBody(content, language, version), String.class);
+      return remember(key, serviceVersion, response.block(Duration.ofSeconds(timeOutInSeconds)));
     } catch (WebClientResponseException ex) {
 
-      String errorMessage = ex.getResponseBodyAsString();
-      throw new RuntimeException(
-          "HTTP error: "
-              + ex.getStatusCode()
-              + " - "
-              + (errorMessage.isEmpty() ? ex.getMessage() : errorMessage),
-          ex);
+      throw remember(key, serviceVersion, ex);
+    } catch (BulkheadFullException ex) {
+      // Left for GlobalExceptionHandler to answer with a 503
+      throw ex;
     } catch (Exception ex) {
 
       throw new RuntimeException("Unexpected error during compilation", ex);
     }
   }
 
+  // Same request as compile, failing the Mono with the same errors instead of blocking
+  public Mono<ResponseEntity<String>> compileAsync(
+      String contentDigest, Supplier<InputStream> content, CodeLanguage language, String version) {
+    CompileKey key = new CompileKey(contentDigest, language, version);
+    String serviceVersion = printscriptVersion.current();
+    CompileOutcome cached = compileCache.get(key, serviceVersion);
+    if (cached != null) {
+      return Mono.fromCallable(() -> replay(cached));
+    }
+
+    String url = printscriptServiceUrl + "/api/compile";
+    return webClientUtility
+        .postAsync(url, compileBody(content, language, version), String.class)
+        .map(response -> remember(key, serviceVersion, response))
+        .onErrorMap(WebClientResponseException.class, ex -> remember(key, serviceVersion, ex));
+  }
+
+  private ResponseEntity<String> replay(CompileOutcome outcome) {
+    if (!outcome.compiled()) {
+      throw new RuntimeException(outcome.message());
+    }
+    return ResponseEntity.ok(outcome.message());
+  }
+
+  private ResponseEntity<String> remember(
+      CompileKey key, String serviceVersion, ResponseEntity<String> response) {
+    if (response != null && response.getStatusCode().is2xxSuccessful()) {
+      compileCache.put(key, new CompileOutcome(true, response.getBody()), serviceVersion);
+    }
+    return response;
+  }
+
+  // The service answers code that does not compile with a 500 carrying the compiler's message.
+  // A 500 without a body is the service failing, and like any other status may pass on a retry.
+  private RuntimeException remember(
+      CompileKey key, String serviceVersion, WebClientResponseException ex) {
+    RuntimeException error = compileError(ex);
+    if (ex instanceof WebClientResponseException.InternalServerError
+        && !ex.getResponseBodyAsString().isBlank()) {
+      compileCache.put(key, new CompileOutcome(false, error.getMessage()), serviceVersion);
+    }
+    return error;
+  }
+
+  private MultiValueMap<String, HttpEntity<?>> compileBody(
+      Supplier<InputStream> content, CodeLanguage language, String version) {
+    MultipartBodyBuilder body = new MultipartBodyBuilder();
+    addContentPart(body, "code", content);
+    body.part("language", language);
+    body.part("version", version);
+    return body.build();
+  }
+
+  // The part is read in pooled chunks as it is written to the connection. Each subscription opens
+  // the content again, so a retried request does not need a copy held in memory.
+  // Opening may download the asset, so it runs on the bounded elastic scheduler instead of the
+  // event loop writing the body, with the caller's security context for the token.
+  private void addContentPart(
+      MultipartBodyBuilder body, String name, Supplier<InputStream> content) {
+    Callable<InputStream> open =
+        DelegatingSecurityContextCallable.create(content::get, SecurityContextHolder.getContext());
+    Flux<DataBuffer> chunks =
+        DataBufferUtils.readInputStream(open, BUFFER_FACTORY, uploadChunkSize)
+            .subscribeOn(Schedulers.boundedElastic());
+    body.asyncPart(name, chunks, DataBuffer.class).contentType(CONTENT_TYPE);
+  }
+
+  private RuntimeException compileError(WebClientResponseException ex) {
+    String errorMessage = ex.getResponseBodyAsString();
+    if (ex instanceof WebClientResponseException.InternalServerError) {
+      return new RuntimeException((errorMessage.isEmpty() ? ex.getStatusText() : errorMessage), ex);
+    }
+    return new RuntimeException(
+        "HTTP error: "
+            + ex.getStatusCode()
+            + " - "
+            + (errorMessage.isEmpty() ? ex.getMessage() : errorMessage),
+        ex);
+  }
+
+  // Answers from the test result cache when the same content was run with the same inputs and
+  // outputs before. The content is only read on a miss, so a hit never downloads the asset.
+  public TestResultDto test(
+      String contentDigest,
+      Supplier<InputStream> content,
+      String language,
+      String version,
+      List<String> inputs,
+      List<String> outputs) {
+    TestRunKey key = new TestRunKey(contentDigest, language, version, inputs, outputs);
+    String serviceVersion = printscriptVersion.current();
+    String cached = testResultCache.get(key, serviceVersion);
+    if (cached != null) {
+      return TestResultDto.builder().result(cached).cached(true).build();
+    }
+
+    ResponseEntity<String> response = test(content, language, version, key.inputs(), key.outputs());
+    if (response.getStatusCode().isError()) {
+      throw new HttpServerErrorException(response.getStatusCode());
+    }
+    if (response.getBody() != null) {
+      testResultCache.put(key, response.getBody(), serviceVersion);
+    }
+    return TestResultDto.builder().result(response.getBody()).cached(false).build();
+  }
+
   public ResponseEntity<String> test(
-      InputStream content,
+      Supplier<InputStream> content,
       String language,
       String version,
       List<String> inputs,
       List<String> outputs) {
-    String resource = convertInputStreamToString(content);
-    MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
-    body.add("content", resource);
-    body.add("language", language);
-    body.add("version", version);
+    MultipartBodyBuilder body = new MultipartBodyBuilder();
+    addContentPart(body, "content", content);
+    body.part("language", language);
+    body.part("version", version);
 
     if (inputs.isEmpty()) {
-      body.add("input", new String[0]);
+      body.part("input", new String[0]);
     } else {
-      inputs.forEach(input -> body.add("input", input));
+      inputs.forEach(input -> body.part("input", input));
     }
 
     if (outputs.isEmpty()) {
-      body.add("output", new String[0]);
+      body.part("output", new String[0]);
     } else {
-      outputs.forEach(output -> body.add("output", output));
+      outputs.forEach(output -> body.part("output", output));
     }
 
     String url = printscriptServiceUrl + "/api/test";
-    Mono<ResponseEntity<String>> response = webClientUtility.postAsync(url, body, String.class);
+    Mono<ResponseEntity<String>> response =
+        webClientUtility.postAsync(url, body.build(), String.class);
     return response.block(Duration.ofSeconds(timeOutInSeconds));
   }
-
-  private String convertInputStreamToString(InputStream inputStream) {
-    try (BufferedReader reader =
-        new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
-      return reader.lines().collect(Collectors.joining("\n"));
-    } catch (IOException e) {
-      throw new RuntimeException("Error reading InputStream", e);
-    }
-  }
 }
@@ -0,0 +1,100 @@
+package snippetmanager.webservice.printscript;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import snippetmanager.webservice.WebClientUtility;
+
+// Build of the printscript service, read from its version endpoint every check-interval. Cached
+// compile outcomes and test results are only valid for the build that produced them, so they are
+// scoped to this version. When no check succeeded within two intervals the version is unknown and
+// the caches are bypassed; failed checks are counted under printscript.version.checks.
+@Component
+public class PrintscriptVersion implements InitializingBean, DisposableBean {
+  private final WebClientUtility webClientUtility;
+
+  private final MeterRegistry meterRegistry;
+
+  private final String versionUrl;
+
+  private final Duration checkInterval;
+
+  private final AtomicReference<Observed> observed = new AtomicReference<>();
+
+  private ScheduledExecutorService checker;
+
+  public PrintscriptVersion(
+      WebClientUtility webClientUtility,
+      MeterRegistry meterRegistry,
+      @Value("${printscript.service.url}") String printscriptServiceUrl,
+      @Value("${printscript.service.version-path:/api/version}") String versionPath,
+      @Value("${printscript.service.version-check-interval:1m}") Duration checkInterval) {
+    this.webClientUtility = webClientUtility;
+    this.meterRegistry = meterRegistry;
+    this.versionUrl = printscriptServiceUrl + versionPath;
+    this.checkInterval = checkInterval;
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    checker =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "printscript-version-check");
+              thread.setDaemon(true);
+              return thread;
+            });
+    long intervalMillis = checkInterval.toMillis();
+    checker.scheduleWithFixedDelay(this::check, 0, intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  // Null while the version is unknown; callers then neither read nor fill their caches
+  public String current() {
+    Observed current = observed.get();
+    if (current == null
+        || System.nanoTime() - current.checkedAt() > 2 * checkInterval.toNanos()) {
+      return null;
+    }
+    return current.version();
+  }
+
+  void check() {
+    try {
+      ResponseEntity<String> response =
+          webClientUtility
+              .getAsync(versionUrl, new ParameterizedTypeReference<String>() {})
+              .block(checkInterval);
+      String version = response == null ? null : response.getBody();
+      if (version == null || version.isBlank()) {
+        countCheck("empty");
+        return;
+      }
+      observed.set(new Observed(version.strip(), System.nanoTime()));
+      countCheck("ok");
+    } catch (RuntimeException e) {
+      countCheck("failed");
+    }
+  }
+
+  private void countCheck(String outcome) {
+    meterRegistry.counter("printscript.version.checks", "outcome", outcome).increment();
+  }
+
+  @Override
+  public void destroy() {
+    if (checker != null) {
+      checker.shutdownNow();
+    }
+  }
+
+  private record Observed(String version, long checkedAt) {}
+}
@@ -0,0 +1,71 @@
+package snippetmanager.webservice.printscript;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Test run results by (content digest, language, version, inputs, outputs), bounded by bytes and
+// scoped to the printscript version that produced them, like the compile cache.
+@Component
+public class TestResultCache {
+  private final VersionScopedCache<TestRunKey, String> results;
+
+  public TestResultCache(
+      MeterRegistry meterRegistry,
+      @Value("${cache.test-results.max-bytes:4194304}") long maxBytes,
+      @Value("${cache.test-results.expire-after-write:6h}") Duration expireAfterWrite) {
+    this.results =
+        new VersionScopedCache<>(
+            meterRegistry,
+            "test-results",
+            "Bytes of test run results held in memory",
+            maxBytes,
+            expireAfterWrite,
+            (key, result) -> key.weight() + 2 * result.length());
+  }
+
+  public String get(TestRunKey key, String serviceVersion) {
+    return results.get(key, serviceVersion);
+  }
+
+  public void put(TestRunKey key, String result, String serviceVersion) {
+    results.put(key, result, serviceVersion);
+  }
+
+  // A missing list is no values; a null value is rejected with a 400 by the exception handler
+  public record TestRunKey(
+      String contentDigest,
+      String language,
+      String version,
+      List<String> inputs,
+      List<String> outputs) {
+    public TestRunKey {
+      inputs = copyOf(inputs, "inputs");
+      outputs = copyOf(outputs, "outputs");
+    }
+
+    private static List<String> copyOf(List<String> values, String name) {
+      if (values == null) {
+        return List.of();
+      }
+      if (values.stream().anyMatch(Objects::isNull)) {
+        throw new IllegalArgumentException("Test " + name + " cannot contain null values");
+      }
+      return List.copyOf(values);
+    }
+
+    int weight() {
+      int size = 0;
+      for (String value : inputs) {
+        size += 2 * value.length();
+      }
+      for (String value : outputs) {
+        size += 2 * value.length();
+      }
+      return size;
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package snippetmanager.webservice.printscript;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Weigher;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Answers of the printscript service, bounded by an estimate of the bytes held. An answer only
+// depends on the printscript build, so every entry is keyed by the PrintscriptVersion read before
+// the request was sent, and the rest are dropped as soon as a lookup sees a different version.
+// An unknown (null) version bypasses the cache.
+class VersionScopedCache<K, V> {
+  // Key fields, the version string and object headers, charged on top of the weigher
+  static final int ENTRY_OVERHEAD = 192;
+
+  private final Cache<ScopedKey<K>, V> entries;
+
+  private final AtomicReference<String> latestVersion = new AtomicReference<>();
+
+  VersionScopedCache(
+      MeterRegistry meterRegistry,
+      String name,
+      String description,
+      long maxBytes,
+      Duration expireAfterWrite,
+      Weigher<K, V> weigher) {
+    this.entries =
+        Caffeine.newBuilder()
+            .maximumWeight(maxBytes)
+            .weigher(
+                (ScopedKey<K> key, V value) -> ENTRY_OVERHEAD + weigher.weigh(key.key(), value))
+            .expireAfterWrite(expireAfterWrite)
+            .recordStats()
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, entries, name);
+    Gauge.builder("cache.bytes", this, VersionScopedCache::weightedSize)
+        .tag("cache", name)
+        .description(description)
+        .baseUnit("bytes")
+        .register(meterRegistry);
+  }
+
+  V get(K key, String serviceVersion) {
+    if (serviceVersion == null) {
+      return null;
+    }
+    String previous = latestVersion.getAndSet(serviceVersion);
+    if (previous != null && !previous.equals(serviceVersion)) {
+      entries.invalidateAll();
+    }
+    return entries.getIfPresent(new ScopedKey<>(serviceVersion, key));
+  }
+
+  // Called with the version read before the request; an answer from a build that has been
+  // replaced since is dropped
+  void put(K key, V value, String serviceVersion) {
+    if (serviceVersion == null || !serviceVersion.equals(latestVersion.get())) {
+      return;
+    }
+    entries.put(new ScopedKey<>(serviceVersion, key), value);
+  }
+
+  private long weightedSize() {
+    return entries.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L);
+  }
+
+  private record ScopedKey<K>(String serviceVersion, K key) {}
+}
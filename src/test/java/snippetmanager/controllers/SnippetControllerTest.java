@@ -1,6 +1,7 @@
 package snippetmanager.controllers;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
@@ -29,7 +30,11 @@ import org.springframework.web.multipart.MultipartFile;
 import snippetmanager.model.dtos.AllSnippetsSendDto;
 import snippetmanager.model.dtos.SnippetReceivedDto;
 import snippetmanager.model.dtos.SnippetSendDto;
+import snippetmanager.model.dtos.TestCaseDto;
+import snippetmanager.model.dtos.TestResultDto;
 import snippetmanager.services.CodeSnippetService;
+import snippetmanager.util.PageCursor;
+import snippetmanager.util.enums.SnippetView;
 
 @ActiveProfiles("test")
 public class SnippetControllerTest {
@@ -80,13 +85,30 @@ public class SnippetControllerTest {
     SnippetSendDto snippetDto =
         SnippetSendDto.builder().version("1.0").language("Java").content("example content").build();
 
-    when(codeSnippetService.getSnippet(snippetId, userId)).thenReturn(snippetDto);
+    when(codeSnippetService.getSnippet(snippetId, userId, null))
+        .thenReturn(new CodeSnippetService.Tagged<>("abc", snippetDto));
 
-    ResponseEntity<SnippetSendDto> response = codeSnippetController.getSnippet(snippetId);
+    ResponseEntity<SnippetSendDto> response = codeSnippetController.getSnippet(snippetId, null);
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
     assertEquals(snippetDto, response.getBody());
-    verify(codeSnippetService).getSnippet(snippetId, userId);
+    assertEquals("\"abc\"", response.getHeaders().getETag());
+  }
+
+  @Test
+  void getSnippetNotModified() {
+    String snippetId = UUID.randomUUID().toString();
+    String userId = "1";
+
+    when(codeSnippetService.getSnippet(snippetId, userId, "\"old\", \"abc\""))
+        .thenReturn(new CodeSnippetService.Tagged<>("abc", null));
+
+    ResponseEntity<SnippetSendDto> response =
+        codeSnippetController.getSnippet(snippetId, "\"old\", \"abc\"");
+
+    assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+    assertEquals("\"abc\"", response.getHeaders().getETag());
+    assertNull(response.getBody());
   }
 
   @Test
@@ -98,15 +120,52 @@ public class SnippetControllerTest {
     AllSnippetsSendDto expectedResponse =
         AllSnippetsSendDto.builder().snippets(snippets).maxSnippets(2).build();
 
-    when(codeSnippetService.getAllSnippets(0, Integer.MAX_VALUE, userId))
+    when(codeSnippetService.getAllSnippets(0, Integer.MAX_VALUE, userId, SnippetView.FULL))
+        .thenReturn(expectedResponse);
+
+    ResponseEntity<AllSnippetsSendDto> response =
+        codeSnippetController.getAllSnippets(0, Integer.MAX_VALUE, null, "full");
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(snippets, Objects.requireNonNull(response.getBody()).getSnippets());
+    verify(codeSnippetService).getAllSnippets(0, Integer.MAX_VALUE, userId, SnippetView.FULL);
+  }
+
+  @Test
+  void getAllSnippetsSummary() {
+    String userId = "1";
+
+    List<SnippetSendDto> snippets = List.of(SnippetSendDto.builder().name("summary").build());
+    AllSnippetsSendDto expectedResponse =
+        AllSnippetsSendDto.builder().snippets(snippets).maxSnippets(1).build();
+
+    when(codeSnippetService.getAllSnippets(0, 10, userId, SnippetView.SUMMARY))
         .thenReturn(expectedResponse);
 
     ResponseEntity<AllSnippetsSendDto> response =
-        codeSnippetController.getAllSnippets(0, Integer.MAX_VALUE);
+        codeSnippetController.getAllSnippets(0, 10, null, "summary");
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
     assertEquals(snippets, Objects.requireNonNull(response.getBody()).getSnippets());
-    verify(codeSnippetService).getAllSnippets(0, Integer.MAX_VALUE, userId);
+    verify(codeSnippetService).getAllSnippets(0, 10, userId, SnippetView.SUMMARY);
+  }
+
+  @Test
+  void getAllSnippetsWithCursor() {
+    String userId = "1";
+    String cursor = new PageCursor(20, 20).encode();
+
+    AllSnippetsSendDto expectedResponse =
+        AllSnippetsSendDto.builder().snippets(List.of()).maxSnippets(20).build();
+
+    when(codeSnippetService.getAllSnippets(cursor, userId, SnippetView.FULL))
+        .thenReturn(expectedResponse);
+
+    ResponseEntity<AllSnippetsSendDto> response =
+        codeSnippetController.getAllSnippets(null, null, cursor, "full");
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    verify(codeSnippetService).getAllSnippets(cursor, userId, SnippetView.FULL);
   }
 
   @Test
@@ -145,4 +204,16 @@ public class SnippetControllerTest {
   private MultipartFile mockMultipartFile(String content) {
     return new MockMultipartFile("test-snippet", content.getBytes(StandardCharsets.UTF_8));
   }
+
+  @Test
+  void testSnippetReportsCacheHit() {
+    TestCaseDto testCase = TestCaseDto.builder().input(List.of()).output(List.of("1")).build();
+    when(codeSnippetService.test("1", testCase))
+        .thenReturn(TestResultDto.builder().result("passed").cached(true).build());
+
+    ResponseEntity<String> response = codeSnippetController.testSnippet("1", testCase);
+
+    assertEquals("passed", response.getBody());
+    assertEquals("HIT", response.getHeaders().getFirst("X-Test-Result-Cache"));
+  }
 }
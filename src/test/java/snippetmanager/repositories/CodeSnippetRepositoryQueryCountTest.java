@@ -0,0 +1,85 @@
+package snippetmanager.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import jakarta.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import snippetmanager.model.entities.CodeSnippet;
+import snippetmanager.util.enums.CodeLanguage;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class CodeSnippetRepositoryQueryCountTest {
+
+  @Autowired private CodeSnippetRepository codeSnippetRepository;
+
+  @Autowired private TestEntityManager testEntityManager;
+
+  @Autowired private EntityManagerFactory entityManagerFactory;
+
+  private Statistics statistics;
+
+  @BeforeEach
+  void setUp() {
+    statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+  }
+
+  @Test
+  void smallPageIsLoadedWithOneQuery() {
+    List<String> assetIds = saveSnippets(5);
+
+    statistics.clear();
+    List<CodeSnippet> snippets = codeSnippetRepository.findAllByAssetIdIn(assetIds);
+
+    assertEquals(5, snippets.size());
+    assertEquals(1, statistics.getPrepareStatementCount());
+  }
+
+  @Test
+  void largePageIsLoadedWithOneQuery() {
+    List<String> assetIds = saveSnippets(50);
+
+    statistics.clear();
+    List<CodeSnippet> snippets = codeSnippetRepository.findAllByAssetIdIn(assetIds);
+
+    assertEquals(50, snippets.size());
+    assertEquals(1, statistics.getPrepareStatementCount());
+  }
+
+  @Test
+  void missingIdsAreLeftOut() {
+    List<String> assetIds = new ArrayList<>(saveSnippets(3));
+    assetIds.add("missing-asset");
+
+    statistics.clear();
+    List<CodeSnippet> snippets = codeSnippetRepository.findAllByAssetIdIn(assetIds);
+
+    assertEquals(3, snippets.size());
+    assertEquals(1, statistics.getPrepareStatementCount());
+  }
+
+  private List<String> saveSnippets(int count) {
+    List<String> assetIds = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      CodeSnippet codeSnippet = new CodeSnippet();
+      codeSnippet.setName("snippet-" + i);
+      codeSnippet.setLanguage(CodeLanguage.PRINTSCRIPT);
+      codeSnippet.setVersion("1.1");
+      assetIds.add(testEntityManager.persist(codeSnippet).getAssetId());
+    }
+    testEntityManager.flush();
+    testEntityManager.clear();
+    return assetIds;
+  }
+}
@@ -1,21 +1,38 @@
 package snippetmanager.services;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.persistence.EntityNotFoundException;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockitoAnnotations;
@@ -23,6 +40,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.dao.PermissionDeniedDataAccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockMultipartFile;
@@ -31,26 +49,43 @@ import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.context.junit4.AbstractTransactionalJUnit4SpringContextTests;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import reactor.core.publisher.Mono;
 import snippetmanager.model.dtos.AllSnippetsRecieveDto;
+import snippetmanager.model.dtos.AllSnippetsSendDto;
+import snippetmanager.model.dtos.CompileStatusDto;
 import snippetmanager.model.dtos.SnippetIdAuthorDto;
+import snippetmanager.model.dtos.SnippetPageHeaderDto;
 import snippetmanager.model.dtos.SnippetReceivedDto;
 import snippetmanager.model.dtos.SnippetSendDto;
+import snippetmanager.model.dtos.TestCaseDto;
+import snippetmanager.model.dtos.TestResultDto;
+import snippetmanager.model.dtos.TestSuiteResultDto;
 import snippetmanager.model.dtos.webservice.PermissionDto;
 import snippetmanager.model.entities.CodeSnippet;
 import snippetmanager.model.entities.FormatterRule;
 import snippetmanager.model.entities.LintingRule;
+import snippetmanager.model.entities.TestCase;
+import snippetmanager.redis.compiler.CompileProducer;
 import snippetmanager.redis.linter.LintProducer;
 import snippetmanager.repositories.CodeSnippetRepository;
 import snippetmanager.repositories.FormatterRuleRepository;
 import snippetmanager.repositories.LanguagesRepository;
 import snippetmanager.repositories.LintingRuleRepository;
+import snippetmanager.repositories.TestCaseRepository;
+import snippetmanager.util.ContentDigest;
+import snippetmanager.util.PageCursor;
 import snippetmanager.util.enums.CodeLanguage;
+import snippetmanager.util.enums.CompileStatus;
 import snippetmanager.util.enums.LintResult;
 import snippetmanager.util.enums.PermissionType;
+import snippetmanager.util.enums.SnippetView;
 import snippetmanager.webservice.WebClientUtility;
 import snippetmanager.webservice.asset.AssetManager;
 import snippetmanager.webservice.permission.PermissionManager;
@@ -71,8 +106,14 @@ class CodeSnippetServiceTest extends AbstractTransactionalJUnit4SpringContextTes
 
   @MockBean private UserService userService;
 
+  @MockBean private SnippetRevisionService snippetRevisionService;
+
+  @Autowired private MeterRegistry meterRegistry;
+
   @MockBean private LintProducer lintProducer;
 
+  @MockBean private CompileProducer compileProducer;
+
   @MockBean private LintingRuleRepository lintingRuleRepository;
 
   @MockBean private FormatterRuleRepository formatterRuleRepository;
@@ -83,6 +124,8 @@ class CodeSnippetServiceTest extends AbstractTransactionalJUnit4SpringContextTes
 
   @MockBean private LanguagesRepository languagesRepository;
 
+  @MockBean private TestCaseRepository testCaseRepository;
+
   @Autowired private CodeSnippetService codeSnippetService;
 
   @BeforeEach
@@ -103,7 +146,7 @@ class CodeSnippetServiceTest extends AbstractTransactionalJUnit4SpringContextTes
   @Test
   void createSnippetSuccess() {
 
-    when(printscriptManager.compile(anyString(), any(CodeLanguage.class), anyString()))
+    when(printscriptManager.compile(anyString(), any(), any(CodeLanguage.class), anyString()))
         .thenReturn(new ResponseEntity<>("Snippet compiled successfully", HttpStatus.OK));
 
     LintingRule lintingRule = new LintingRule();
@@ -149,11 +192,87 @@ class CodeSnippetServiceTest extends AbstractTransactionalJUnit4SpringContextTes
     String response = codeSnippetService.createSnippet(snippetDto, "1");
 
     assertEquals("Snippet created successfully", response);
-    verify(printscriptManager).compile(anyString(), any(CodeLanguage.class), anyString());
+    verify(printscriptManager).compile(anyString(), any(), any(CodeLanguage.class), anyString());
     verify(codeSnippetRepository).save(any(CodeSnippet.class));
     verify(assetManager).createAsset(eq("snippets"), eq(snippetId), any(MultipartFile.class));
   }
 
+  @Test
+  void createSnippetInAsyncModeQueuesTheCompile() {
+    Object target = AopTestUtils.getUltimateTargetObject(codeSnippetService);
+    ReflectionTestUtils.setField(target, "asyncCompile", true);
+    try {
+      String snippetId = UUID.randomUUID().toString();
+      when(codeSnippetRepository.save(any(CodeSnippet.class)))
+          .thenAnswer(
+              invocation -> {
+                CodeSnippet snippet = invocation.getArgument(0);
+                snippet.setAssetId(snippetId);
+                return snippet;
+              });
+      when(permissionManager.createNewPermission(eq(snippetId), any(PermissionType.class)))
+          .thenReturn(new ResponseEntity<>("Permission created", HttpStatus.OK));
+      when(assetManager.createAsset(eq("snippets"), eq(snippetId), any(MultipartFile.class)))
+          .thenReturn(new ResponseEntity<>("Asset created", HttpStatus.OK));
+
+      SnippetReceivedDto snippetDto =
+          SnippetReceivedDto.builder()
+              .language("PRINTSCRIPT")
+              .version("1.1")
+              .content(mockMultipartFile("println(1);"))
+              .build();
+
+      String response = codeSnippetService.createSnippet(snippetDto, "1");
+
+      assertEquals("Snippet created successfully", response);
+      verify(printscriptManager, never())
+          .compile(anyString(), any(), any(CodeLanguage.class), anyString());
+      verify(codeSnippetRepository)
+          .save(
+              argThat(
+                  (CodeSnippet snippet) -> snippet.getCompileStatus() == CompileStatus.VALIDATING));
+      verify(compileProducer)
+          .publishEvent(
+              argThat(
+                  job ->
+                      job.getAssetId().equals(snippetId)
+                          && job.getContent().equals("println(1);")
+                          && job.getContentHash().equals(ContentDigest.sha256("println(1);"))));
+    } finally {
+      ReflectionTestUtils.setField(target, "asyncCompile", false);
+    }
+  }
+
+  @Test
+  void saveCompileResultIgnoresOutcomesForOlderContent() {
+    String snippetId = UUID.randomUUID().toString();
+    CodeSnippet codeSnippet = new CodeSnippet();
+    codeSnippet.setAssetId(snippetId);
+    codeSnippet.setCompileStatus(CompileStatus.VALIDATING);
+    codeSnippet.setContentHash(ContentDigest.sha256("second"));
+    codeSnippet.setLanguage(CodeLanguage.PRINTSCRIPT);
+    codeSnippet.setVersion("1.1");
+    when(codeSnippetRepository.findCodeSnippetByAssetId(snippetId))
+        .thenReturn(Optional.of(codeSnippet));
+
+    codeSnippetService.saveCompileResult(
+        snippetId, ContentDigest.sha256("first"), "PRINTSCRIPT", "1.1", true, null);
+    assertEquals(CompileStatus.VALIDATING, codeSnippet.getCompileStatus());
+
+    codeSnippetService.saveCompileResult(
+        snippetId, ContentDigest.sha256("second"), "PRINTSCRIPT", "1.0", true, null);
+    assertEquals(CompileStatus.VALIDATING, codeSnippet.getCompileStatus());
+
+    codeSnippetService.saveCompileResult(
+        snippetId, ContentDigest.sha256("second"), "PRINTSCRIPT", "1.1", false, "Unexpected token");
+    assertEquals(CompileStatus.INVALID, codeSnippet.getCompileStatus());
+
+    when(permissionManager.canRead(eq(snippetId))).thenReturn(true);
+    CompileStatusDto status = codeSnippetService.getCompileStatus(snippetId);
+    assertEquals("INVALID", status.getStatus());
+    assertEquals("Unexpected token", status.getMessage());
+  }
+
   @Test
   void createSnippetPermissionError() {
     MultipartFile contentFile = mockMultipartFile("test content");
@@ -184,7 +303,8 @@ class CodeSnippetServiceTest extends AbstractTransactionalJUnit4SpringContextTes
         .thenReturn(new ResponseEntity<>("Permission error", HttpStatus.INTERNAL_SERVER_ERROR));
 
     when(printscriptManager.compile(
-            eq(snippetDto.getContentInString()),
+            eq(ContentDigest.sha256(snippetDto.getContentInString())),
+            any(),
             eq(snippetDto.getLanguageInEnum()),
             eq(snippetDto.getVersion())))
         .thenReturn(new ResponseEntity<>("Snippet compiled successfully", HttpStatus.OK));
@@ -196,6 +316,149 @@ class CodeSnippetServiceTest extends AbstractTransactionalJUnit4SpringContextTes
         });
   }
 
+  @Test
+  void createSnippetAssetRefusalUndoesOnlyThePermission() {
+    String snippetId = givenCreate();
+    when(assetManager.createAsset(eq("snippets"), eq(snippetId), any(MultipartFile.class)))
+        .thenThrow(refusal(HttpStatus.BAD_REQUEST));
+    when(permissionManager.deletePermission(snippetId))
+        .thenReturn(new ResponseEntity<>("Permission deleted", HttpStatus.OK));
+
+    assertThrows(
+        WebClientResponseException.class,
+        () -> codeSnippetService.createSnippet(snippetDto("test content"), "1"));
+
+    verify(permissionManager).deletePermission(snippetId);
+    verify(assetManager, never()).deleteAsset("snippets", snippetId);
+    assertEquals(
+        1.0,
+        meterRegistry
+            .counter("snippet.create.compensations", "step", "permission", "outcome", "undone")
+            .count());
+  }
+
+  @Test
+  void createSnippetAssetServerErrorUndoesTheUpload() {
+    String snippetId = givenCreate();
+    when(assetManager.createAsset(eq("snippets"), eq(snippetId), any(MultipartFile.class)))
+        .thenThrow(refusal(HttpStatus.SERVICE_UNAVAILABLE));
+    when(assetManager.deleteAsset("snippets", snippetId))
+        .thenReturn(new ResponseEntity<>("Asset deleted", HttpStatus.OK));
+    when(permissionManager.deletePermission(snippetId))
+        .thenReturn(new ResponseEntity<>("Permission deleted", HttpStatus.OK));
+
+    assertThrows(
+        WebClientResponseException.class,
+        () -> codeSnippetService.createSnippet(snippetDto("test content"), "1"));
+
+    // A 5xx does not prove the asset service dropped the upload
+    verify(assetManager, timeout(2000)).deleteAsset("snippets", snippetId);
+    verify(permissionManager).deletePermission(snippetId);
+  }
+
+  @Test
+  void createSnippetUploadsACopyOfTheRequestContent() throws Exception {
+    String snippetId = givenCreate();
+    MultipartFile requestContent = mockMultipartFile("test content");
+    AtomicReference<MultipartFile> uploaded = new AtomicReference<>();
+    when(assetManager.createAsset(eq("snippets"), eq(snippetId), any(MultipartFile.class)))
+        .thenAnswer(
+            invocation -> {
+              uploaded.set(invocation.getArgument(2));
+              return new ResponseEntity<>("Asset created", HttpStatus.OK);
+            });
+
+    codeSnippetService.createSnippet(
+        SnippetReceivedDto.builder()
+            .content(requestContent)
+            .language("PRINTSCRIPT")
+            .version("1.1")
+            .build(),
+        "1");
+
+    assertNotSame(requestContent, uploaded.get());
+    assertArrayEquals(requestContent.getBytes(), uploaded.get().getBytes());
+  }
+
+  // A snippet save that succeeds up to the asset upload
+  private String givenCreate() {
+    String snippetId = UUID.randomUUID().toString();
+    when(codeSnippetRepository.save(any(CodeSnippet.class)))
+        .thenAnswer(
+            invocation -> {
+              CodeSnippet snippet = invocation.getArgument(0);
+              snippet.setAssetId(snippetId);
+              return snippet;
+            });
+    when(printscriptManager.compile(anyString(), any(), any(CodeLanguage.class), anyString()))
+        .thenReturn(new ResponseEntity<>("Snippet compiled successfully", HttpStatus.OK));
+    when(permissionManager.createNewPermission(eq(snippetId), any(PermissionType.class)))
+        .thenReturn(new ResponseEntity<>("Permission created", HttpStatus.OK));
+    return snippetId;
+  }
+
+  private SnippetReceivedDto snippetDto(String content) {
+    return SnippetReceivedDto.builder()
+        .content(mockMultipartFile(content))
+        .language("PRINTSCRIPT")
+        .version("1.1")
+        .build();
+  }
+
+  private WebClientResponseException refusal(HttpStatus status) {
+    return WebClientResponseException.create(
+        status.value(), status.getReasonPhrase(), new HttpHeaders(), new byte[0], null);
+  }
+
+  @Test
+  void createSnippetAssetTimeoutUndoesTheUploadOnceItFinishes() {
+    Object target = AopTestUtils.getUltimateTargetObject(codeSnippetService);
+    ReflectionTestUtils.setField(target, "assetUploadTimeout", Duration.ofMillis(50));
+    try {
+      SnippetReceivedDto snippetDto =
+          SnippetReceivedDto.builder()
+              .content(mockMultipartFile("test content"))
+              .language("PRINTSCRIPT")
+              .version("1.1")
+              .build();
+      String snippetId = UUID.randomUUID().toString();
+
+      when(codeSnippetRepository.save(any(CodeSnippet.class)))
+          .thenAnswer(
+              invocation -> {
+                CodeSnippet snippet = invocation.getArgument(0);
+                snippet.setAssetId(snippetId);
+                return snippet;
+              });
+      when(printscriptManager.compile(anyString(), any(), any(CodeLanguage.class), anyString()))
+          .thenReturn(new ResponseEntity<>("Snippet compiled successfully", HttpStatus.OK));
+      when(permissionManager.createNewPermission(eq(snippetId), any(PermissionType.class)))
+          .thenReturn(new ResponseEntity<>("Permission created", HttpStatus.OK));
+      when(assetManager.createAsset(eq("snippets"), eq(snippetId), any(MultipartFile.class)))
+          .thenAnswer(
+              invocation -> {
+                Thread.sleep(300);
+                return new ResponseEntity<>("Asset created", HttpStatus.OK);
+              });
+      when(assetManager.deleteAsset("snippets", snippetId))
+          .thenReturn(new ResponseEntity<>("Asset deleted", HttpStatus.OK));
+      when(permissionManager.deletePermission(snippetId))
+          .thenReturn(new ResponseEntity<>("Permission deleted", HttpStatus.OK));
+
+      HttpServerErrorException error =
+          assertThrows(
+              HttpServerErrorException.class,
+              () -> codeSnippetService.createSnippet(snippetDto, "1"));
+
+      assertEquals(HttpStatus.GATEWAY_TIMEOUT, error.getStatusCode());
+      verify(permissionManager).deletePermission(snippetId);
+      // The upload was still running, so its delete waits until it lands
+      verify(assetManager, timeout(2000)).deleteAsset("snippets", snippetId);
+    } finally {
+      ReflectionTestUtils.setField(target, "assetUploadTimeout", Duration.ofSeconds(35));
+    }
+  }
+
   @Test
   void getSnippetSuccess() {
     String snippetId = UUID.randomUUID().toString();
@@ -223,7 +486,7 @@ class CodeSnippetServiceTest extends AbstractTransactionalJUnit4SpringContextTes
     String userId = "1";
 
     when(permissionManager.canRead(eq(snippetId))).thenReturn(true);
-    when(codeSnippetRepository.findById(snippetId)).thenReturn(Optional.empty());
+    when(codeSnippetRepository.lockByAssetId(snippetId)).thenReturn(Optional.empty());
 
     assertThrows(
         EntityNotFoundException.class,
@@ -256,7 +519,7 @@ class CodeSnippetServiceTest extends AbstractTransactionalJUnit4SpringContextTes
     existingSnippet.setVersion("1.1");
     existingSnippet.setLanguage(CodeLanguage.PRINTSCRIPT);
 
-    when(codeSnippetRepository.findById(snippetId)).thenReturn(Optional.of(existingSnippet));
+    when(codeSnippetRepository.lockByAssetId(snippetId)).thenReturn(Optional.of(existingSnippet));
 
     SnippetReceivedDto snippetDto =
         SnippetReceivedDto.builder()
@@ -277,12 +540,223 @@ class CodeSnippetServiceTest extends AbstractTransactionalJUnit4SpringContextTes
     when(assetManager.createAsset(eq("snippets"), eq(snippetId), any(MultipartFile.class)))
         .thenReturn(new ResponseEntity<>("Asset updated", HttpStatus.OK));
 
-    when(printscriptManager.compile(anyString(), any(CodeLanguage.class), anyString()))
+    when(printscriptManager.compile(anyString(), any(), any(CodeLanguage.class), anyString()))
         .thenReturn(new ResponseEntity<>("Snippet compiled successfully", HttpStatus.OK));
 
     String response = codeSnippetService.updateSnippet(snippetId, userId, snippetDto);
 
     assertEquals("Snippet updated successfully", response);
+    assertEquals(ContentDigest.sha256("test content"), existingSnippet.getContentHash());
+  }
+
+  @Test
+  void updateSnippetSkipsUnchangedContent() {
+    String snippetId = UUID.randomUUID().toString();
+
+    CodeSnippet existingSnippet = new CodeSnippet();
+    existingSnippet.setAssetId(snippetId);
+    existingSnippet.setVersion("1.1");
+    existingSnippet.setLanguage(CodeLanguage.PRINTSCRIPT);
+    existingSnippet.setContentHash(ContentDigest.sha256("test content"));
+    when(codeSnippetRepository.lockByAssetId(snippetId)).thenReturn(Optional.of(existingSnippet));
+    when(permissionManager.canWrite(eq(snippetId))).thenReturn(true);
+
+    SnippetReceivedDto snippetDto =
+        SnippetReceivedDto.builder().content(mockMultipartFile("test content")).build();
+    double skippedBefore = meterRegistry.counter("snippet.updates", "outcome", "unchanged").count();
+
+    String response = codeSnippetService.updateSnippet(snippetId, "1", snippetDto);
+
+    assertEquals("Snippet updated successfully", response);
+    assertEquals(
+        skippedBefore + 1,
+        meterRegistry.counter("snippet.updates", "outcome", "unchanged").count());
+    verify(printscriptManager, never()).compile(anyString(), any(), any(), anyString());
+    verify(assetManager, never()).createAsset(anyString(), anyString(), any(MultipartFile.class));
+    verify(lintProducer, never()).publishEvent(any());
+  }
+
+  @Test
+  void savingUnchangedContentRequeuesAStuckCompile() {
+    Object target = AopTestUtils.getUltimateTargetObject(codeSnippetService);
+    ReflectionTestUtils.setField(target, "asyncCompile", true);
+    try {
+      String snippetId = UUID.randomUUID().toString();
+      CodeSnippet existingSnippet = new CodeSnippet();
+      existingSnippet.setAssetId(snippetId);
+      existingSnippet.setVersion("1.1");
+      existingSnippet.setLanguage(CodeLanguage.PRINTSCRIPT);
+      existingSnippet.setCompileStatus(CompileStatus.VALIDATING);
+      existingSnippet.setContentHash(ContentDigest.sha256("println(1);"));
+      when(codeSnippetRepository.lockByAssetId(snippetId)).thenReturn(Optional.of(existingSnippet));
+      when(permissionManager.canWrite(eq(snippetId))).thenReturn(true);
+
+      SnippetReceivedDto snippetDto =
+          SnippetReceivedDto.builder().content(mockMultipartFile("println(1);")).build();
+
+      String response = codeSnippetService.updateSnippet(snippetId, "1", snippetDto);
+
+      assertEquals("Snippet updated successfully", response);
+      verify(compileProducer)
+          .publishEvent(
+              argThat(
+                  job ->
+                      job.getAssetId().equals(snippetId)
+                          && job.getVersion().equals("1.1")
+                          && job.getContentHash().equals(ContentDigest.sha256("println(1);"))));
+      verify(assetManager, never()).createAsset(anyString(), anyString(), any(MultipartFile.class));
+    } finally {
+      ReflectionTestUtils.setField(target, "asyncCompile", false);
+    }
+  }
+
+  @Test
+  void testUsesTheStoredContentHash() {
+    String snippetId = UUID.randomUUID().toString();
+    CodeSnippet codeSnippet = new CodeSnippet();
+    codeSnippet.setAssetId(snippetId);
+    codeSnippet.setVersion("1.1");
+    codeSnippet.setLanguage(CodeLanguage.PRINTSCRIPT);
+    codeSnippet.setContentHash(ContentDigest.sha256("println(1);"));
+    when(permissionManager.canWrite(eq(snippetId))).thenReturn(true);
+    when(codeSnippetRepository.findCodeSnippetByAssetId(snippetId))
+        .thenReturn(Optional.of(codeSnippet));
+    TestResultDto cached = TestResultDto.builder().result("passed").cached(true).build();
+    when(printscriptManager.test(
+            eq(ContentDigest.sha256("println(1);")),
+            any(),
+            eq("PRINTSCRIPT"),
+            eq("1.1"),
+            eq(List.of()),
+            eq(List.of("1"))))
+        .thenReturn(cached);
+
+    TestCaseDto testCase = TestCaseDto.builder().input(List.of()).output(List.of("1")).build();
+
+    assertEquals(cached, codeSnippetService.test(snippetId, testCase));
+    verify(assetManager, never()).getAsset(anyString(), anyString());
+  }
+
+  @Test
+  void runAllTestsReadsTheContentOnceAndReportsEachCase() {
+    String snippetId = UUID.randomUUID().toString();
+    CodeSnippet codeSnippet = new CodeSnippet();
+    codeSnippet.setAssetId(snippetId);
+    codeSnippet.setVersion("1.1");
+    codeSnippet.setLanguage(CodeLanguage.PRINTSCRIPT);
+    when(permissionManager.canWrite(eq(snippetId))).thenReturn(true);
+    when(codeSnippetRepository.findCodeSnippetByAssetId(snippetId))
+        .thenReturn(Optional.of(codeSnippet));
+    when(assetManager.getAsset("snippets", snippetId))
+        .thenReturn(new ByteArrayInputStream("println(1);".getBytes(StandardCharsets.UTF_8)));
+    TestCase passing = testCase("passing", List.of("1"));
+    TestCase failing = testCase("failing", List.of("2"));
+    when(testCaseRepository.findByAssetId(snippetId)).thenReturn(List.of(passing, failing));
+    String digest = ContentDigest.sha256("println(1);");
+    when(printscriptManager.test(
+            eq(digest), any(), eq("PRINTSCRIPT"), eq("1.1"), eq(List.of()), eq(List.of("1"))))
+        .thenReturn(TestResultDto.builder().result("passed").cached(true).build());
+    when(printscriptManager.test(
+            eq(digest), any(), eq("PRINTSCRIPT"), eq("1.1"), eq(List.of()), eq(List.of("2"))))
+        .thenThrow(new HttpServerErrorException(HttpStatus.BAD_GATEWAY));
+
+    TestSuiteResultDto suite = codeSnippetService.runAllTests(snippetId);
+
+    assertEquals(2, suite.getTotal());
+    assertEquals(1, suite.getErrors());
+    assertEquals(1, suite.getCached());
+    assertEquals("passing", suite.getResults().get(0).getName());
+    assertEquals("passed", suite.getResults().get(0).getResult());
+    assertEquals("failing", suite.getResults().get(1).getName());
+    assertNull(suite.getResults().get(1).getResult());
+    verify(permissionManager).canWrite(snippetId);
+    verify(assetManager).getAsset("snippets", snippetId);
+  }
+
+  private TestCase testCase(String name, List<String> outputs) {
+    TestCase testCase = new TestCase();
+    testCase.setId(UUID.randomUUID().toString());
+    testCase.setName(name);
+    testCase.setInputs(List.of());
+    testCase.setOutputs(outputs);
+    return testCase;
+  }
+
+  @Test
+  void conditionalGetChecksAndLoadsTheSnippetOnce() {
+    String snippetId = UUID.randomUUID().toString();
+    CodeSnippet codeSnippet = new CodeSnippet();
+    codeSnippet.setAssetId(snippetId);
+    codeSnippet.setLanguage(CodeLanguage.PRINTSCRIPT);
+    when(permissionManager.canRead(eq(snippetId))).thenReturn(true);
+    when(codeSnippetRepository.findCodeSnippetByAssetId(snippetId))
+        .thenReturn(Optional.of(codeSnippet));
+    when(assetManager.getAsset(eq("snippets"), eq(snippetId)))
+        .thenReturn(new ByteArrayInputStream("test content".getBytes()));
+
+    CodeSnippetService.Tagged<SnippetSendDto> loaded =
+        codeSnippetService.getSnippet(snippetId, "1", null);
+    CodeSnippetService.Tagged<SnippetSendDto> unchanged =
+        codeSnippetService.getSnippet(snippetId, "1", "\"" + loaded.etag() + "\"");
+
+    assertEquals(snippetId, loaded.body().getAssetId());
+    assertEquals(loaded.etag(), unchanged.etag());
+    assertNull(unchanged.body());
+    verify(permissionManager, times(2)).canRead(snippetId);
+    verify(codeSnippetRepository, times(2)).findCodeSnippetByAssetId(snippetId);
+    verify(assetManager, times(1)).getAsset("snippets", snippetId);
+  }
+
+  @Test
+  void contentEtagFollowsContentAndLintResult() {
+    String snippetId = UUID.randomUUID().toString();
+    CodeSnippet codeSnippet = new CodeSnippet();
+    codeSnippet.setAssetId(snippetId);
+    codeSnippet.setContentHash(ContentDigest.sha256("first"));
+    when(permissionManager.canRead(eq(snippetId))).thenReturn(true);
+    when(codeSnippetRepository.findCodeSnippetByAssetId(snippetId))
+        .thenReturn(Optional.of(codeSnippet));
+
+    String first = etag(snippetId);
+    assertEquals(first, etag(snippetId));
+
+    codeSnippet.setLintResult(LintResult.SUCCESS);
+    String linted = etag(snippetId);
+    codeSnippet.setContentHash(ContentDigest.sha256("second"));
+    String updated = etag(snippetId);
+
+    assertNotEquals(first, linted);
+    assertNotEquals(linted, updated);
+    verify(assetManager, never()).getAsset(anyString(), anyString());
+  }
+
+  @Test
+  void contentWriterIsLeftOutWhileTheEtagMatches() throws IOException {
+    String snippetId = UUID.randomUUID().toString();
+    CodeSnippet codeSnippet = new CodeSnippet();
+    codeSnippet.setAssetId(snippetId);
+    when(permissionManager.canRead(eq(snippetId))).thenReturn(true);
+    when(codeSnippetRepository.findCodeSnippetByAssetId(snippetId))
+        .thenReturn(Optional.of(codeSnippet));
+
+    String etag = etag(snippetId);
+    CodeSnippetService.Tagged<StreamingResponseBody> unchanged =
+        codeSnippetService.getSnippetContent(snippetId, "1", "\"" + etag + "\"");
+    CodeSnippetService.Tagged<StreamingResponseBody> changed =
+        codeSnippetService.getSnippetContent(snippetId, "1", "\"old\"");
+    OutputStream outputStream = new ByteArrayOutputStream();
+    changed.body().writeTo(outputStream);
+
+    assertNull(unchanged.body());
+    assertEquals(etag, changed.etag());
+    // Each call checked and loaded once; writing the body only copies the content
+    verify(permissionManager, times(3)).canRead(snippetId);
+    verify(codeSnippetRepository, times(3)).findCodeSnippetByAssetId(snippetId);
+    verify(assetManager).writeAsset("snippets", snippetId, outputStream);
+  }
+
+  private String etag(String snippetId) {
+    return codeSnippetService.getSnippetContent(snippetId, "1", null).etag();
   }
 
   @Test
@@ -293,7 +767,7 @@ class CodeSnippetServiceTest extends AbstractTransactionalJUnit4SpringContextTes
     SnippetReceivedDto snippetDto =
         SnippetReceivedDto.builder().language("PRINTSCRIPT").version("1.1").build();
 
-    when(codeSnippetRepository.findById(snippetId)).thenReturn(Optional.empty());
+    when(codeSnippetRepository.lockByAssetId(snippetId)).thenReturn(Optional.empty());
 
     assertThrows(
         EntityNotFoundException.class,
@@ -357,7 +831,7 @@ class CodeSnippetServiceTest extends AbstractTransactionalJUnit4SpringContextTes
         .thenReturn(ResponseEntity.ok(allSnippetsRecieveDto));
     when(assetManager.getAsset(eq("snippets"), eq(assetId)))
         .thenReturn(new ByteArrayInputStream("test content".getBytes()));
-    when(userService.getUserName(eq(userId))).thenReturn("userName");
+    when(userService.getUserNames(eq(List.of(userId)))).thenReturn(Map.of(userId, "userName"));
 
     CodeSnippet codeSnippet = new CodeSnippet();
     codeSnippet.setAssetId(assetId);
@@ -366,14 +840,185 @@ class CodeSnippetServiceTest extends AbstractTransactionalJUnit4SpringContextTes
     codeSnippet.setExtension("prs");
     codeSnippet.setName("test-snippet");
     codeSnippet.setLintResult(LintResult.SUCCESS);
-    when(codeSnippetRepository.findCodeSnippetByAssetId(eq(assetId)))
-        .thenReturn(Optional.of(codeSnippet));
+    when(codeSnippetRepository.findAllByAssetIdIn(eq(List.of(assetId))))
+        .thenReturn(List.of(codeSnippet));
 
     codeSnippetService.getAllSnippets(0, 10, userId);
 
     verify(permissionManager).getSnippetsUserWithPermission(0, 10, PermissionType.READ.toString());
   }
 
+  @Test
+  public void getAllSnippetsKeepsPermissionOrder() {
+    String userId = UUID.randomUUID().toString();
+    List<String> assetIds =
+        List.of(
+            UUID.randomUUID().toString(),
+            UUID.randomUUID().toString(),
+            UUID.randomUUID().toString());
+
+    AllSnippetsRecieveDto allSnippetsRecieveDto =
+        AllSnippetsRecieveDto.builder()
+            .snippetsIds(
+                assetIds.stream()
+                    .map(id -> SnippetIdAuthorDto.builder().author(userId).snippetId(id).build())
+                    .toList())
+            .maxSnippets(assetIds.size())
+            .build();
+    when(permissionManager.getSnippetsUserWithPermission(0, 10, PermissionType.READ.toString()))
+        .thenReturn(ResponseEntity.ok(allSnippetsRecieveDto));
+
+    List<CodeSnippet> rows = new ArrayList<>();
+    for (String assetId : assetIds) {
+      CodeSnippet codeSnippet = new CodeSnippet();
+      codeSnippet.setAssetId(assetId);
+      codeSnippet.setLanguage(CodeLanguage.PRINTSCRIPT);
+      rows.add(0, codeSnippet);
+    }
+    when(codeSnippetRepository.findAllByAssetIdIn(eq(assetIds))).thenReturn(rows);
+
+    List<SnippetSendDto> snippets =
+        codeSnippetService.getAllSnippets(0, 10, userId, SnippetView.SUMMARY).getSnippets();
+
+    assertEquals(assetIds, snippets.stream().map(SnippetSendDto::getAssetId).toList());
+  }
+
+  @Test
+  public void getAllSnippetsMissingSnippet() {
+    String userId = UUID.randomUUID().toString();
+    String assetId = UUID.randomUUID().toString();
+
+    AllSnippetsRecieveDto allSnippetsRecieveDto =
+        AllSnippetsRecieveDto.builder()
+            .snippetsIds(
+                List.of(SnippetIdAuthorDto.builder().author(userId).snippetId(assetId).build()))
+            .build();
+    when(permissionManager.getSnippetsUserWithPermission(0, 10, PermissionType.READ.toString()))
+        .thenReturn(ResponseEntity.ok(allSnippetsRecieveDto));
+    when(codeSnippetRepository.findAllByAssetIdIn(eq(List.of(assetId)))).thenReturn(List.of());
+
+    assertThrows(
+        EntityNotFoundException.class, () -> codeSnippetService.getAllSnippets(0, 10, userId));
+  }
+
+  @Test
+  public void getAllSnippetsClampsPageAndReturnsCursor() {
+    String userId = UUID.randomUUID().toString();
+    String assetId = UUID.randomUUID().toString();
+
+    AllSnippetsRecieveDto allSnippetsRecieveDto =
+        AllSnippetsRecieveDto.builder()
+            .snippetsIds(
+                List.of(SnippetIdAuthorDto.builder().author(userId).snippetId(assetId).build()))
+            .maxSnippets(500)
+            .build();
+    when(permissionManager.getSnippetsUserWithPermission(0, 100, PermissionType.READ.toString()))
+        .thenReturn(ResponseEntity.ok(allSnippetsRecieveDto));
+    CodeSnippet codeSnippet = new CodeSnippet();
+    codeSnippet.setAssetId(assetId);
+    codeSnippet.setLanguage(CodeLanguage.PRINTSCRIPT);
+    when(codeSnippetRepository.findAllByAssetIdIn(eq(List.of(assetId))))
+        .thenReturn(List.of(codeSnippet));
+
+    AllSnippetsSendDto page =
+        codeSnippetService.getAllSnippets(0, Integer.MAX_VALUE, userId, SnippetView.SUMMARY);
+
+    verify(permissionManager).getSnippetsUserWithPermission(0, 100, PermissionType.READ.toString());
+    assertEquals(new PageCursor(1, 100), PageCursor.decode(page.getNextCursor()));
+  }
+
+  @Test
+  public void streamAllSnippetsWritesHeaderFirst() {
+    String userId = UUID.randomUUID().toString();
+    List<String> assetIds = List.of(UUID.randomUUID().toString(), UUID.randomUUID().toString());
+
+    AllSnippetsRecieveDto allSnippetsRecieveDto =
+        AllSnippetsRecieveDto.builder()
+            .snippetsIds(
+                assetIds.stream()
+                    .map(id -> SnippetIdAuthorDto.builder().author(userId).snippetId(id).build())
+                    .toList())
+            .maxSnippets(assetIds.size())
+            .build();
+    when(permissionManager.getSnippetsUserWithPermission(0, 10, PermissionType.READ.toString()))
+        .thenReturn(ResponseEntity.ok(allSnippetsRecieveDto));
+    List<CodeSnippet> rows = new ArrayList<>();
+    for (String assetId : assetIds) {
+      CodeSnippet codeSnippet = new CodeSnippet();
+      codeSnippet.setAssetId(assetId);
+      codeSnippet.setLanguage(CodeLanguage.PRINTSCRIPT);
+      rows.add(codeSnippet);
+    }
+    when(codeSnippetRepository.findAllByAssetIdIn(eq(assetIds))).thenReturn(rows);
+
+    List<Object> lines = new ArrayList<>();
+    codeSnippetService.streamAllSnippets(
+        0, 10, userId, SnippetView.SUMMARY, lines::add, lines::add);
+
+    assertEquals(3, lines.size());
+    SnippetPageHeaderDto header = (SnippetPageHeaderDto) lines.get(0);
+    assertEquals(2, header.getMaxSnippets());
+    assertNull(header.getNextCursor());
+    assertEquals(
+        Set.copyOf(assetIds),
+        lines.subList(1, 3).stream()
+            .map(line -> ((SnippetSendDto) line).getAssetId())
+            .collect(Collectors.toSet()));
+  }
+
+  @Test
+  public void getAllSnippetsInvalidCursor() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> codeSnippetService.getAllSnippets("not-a-cursor", "1", SnippetView.FULL));
+  }
+
+  @Test
+  public void forEachOwnSnippetWalksAllPages() {
+    String userId = UUID.randomUUID().toString();
+    List<String> assetIds = new ArrayList<>();
+    for (int i = 0; i < 150; i++) {
+      assetIds.add(UUID.randomUUID().toString());
+    }
+    stubOwnPage(assetIds, 0, 100);
+    stubOwnPage(assetIds, 100, 150);
+    when(codeSnippetRepository.findAllByAssetIdIn(any()))
+        .thenAnswer(
+            invocation -> {
+              List<String> ids = invocation.getArgument(0);
+              return ids.stream()
+                  .map(
+                      id -> {
+                        CodeSnippet codeSnippet = new CodeSnippet();
+                        codeSnippet.setAssetId(id);
+                        codeSnippet.setLanguage(CodeLanguage.PRINTSCRIPT);
+                        return codeSnippet;
+                      })
+                  .toList();
+            });
+    when(assetManager.getAsset(eq("snippets"), anyString()))
+        .thenAnswer(invocation -> new ByteArrayInputStream("content".getBytes()));
+
+    List<String> published = new ArrayList<>();
+    codeSnippetService.forEachOwnSnippet(userId, snippet -> published.add(snippet.getAssetId()));
+
+    assertEquals(assetIds, published);
+  }
+
+  private void stubOwnPage(List<String> assetIds, int from, int to) {
+    AllSnippetsRecieveDto page =
+        AllSnippetsRecieveDto.builder()
+            .snippetsIds(
+                assetIds.subList(from, to).stream()
+                    .map(id -> SnippetIdAuthorDto.builder().snippetId(id).build())
+                    .toList())
+            .maxSnippets(assetIds.size())
+            .build();
+    when(permissionManager.getSnippetsUserWithPermission(
+            from, from + 100, PermissionType.READ_WRITE.toString()))
+        .thenReturn(ResponseEntity.ok(page));
+  }
+
   private MultipartFile mockMultipartFile(String content) {
     return new MockMultipartFile("test-snippet", content.getBytes(StandardCharsets.UTF_8));
   }
@@ -0,0 +1,124 @@
+package snippetmanager.services;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.UUID;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+import snippetmanager.model.dtos.SnippetReceivedDto;
+import snippetmanager.model.entities.CodeSnippet;
+import snippetmanager.redis.formatter.FormatterProducer;
+import snippetmanager.redis.linter.LintProducer;
+import snippetmanager.repositories.CodeSnippetRepository;
+import snippetmanager.repositories.FormatterRuleRepository;
+import snippetmanager.repositories.LanguagesRepository;
+import snippetmanager.repositories.LintingRuleRepository;
+import snippetmanager.util.FanOutExecutor;
+import snippetmanager.util.enums.CodeLanguage;
+import snippetmanager.util.enums.PermissionType;
+import snippetmanager.webservice.asset.AssetManager;
+import snippetmanager.webservice.permission.PermissionManager;
+import snippetmanager.webservice.printscript.PrintscriptManager;
+
+// Run with ./gradlew benchmark
+// End-to-end createSnippet latency with the asset upload and the permission creation run one
+// after the other (fan-out concurrency 1) against overlapped.
+@Tag("benchmark")
+class CreateSnippetBenchmarkTest {
+  private static final long COMPILE_LATENCY_MS = 30;
+  private static final long PERMISSION_LATENCY_MS = 25;
+  private static final long ASSET_LATENCY_MS = 40;
+  private static final int RUNS = 20;
+
+  @Test
+  void createLatency() {
+    long sequential = measure(1);
+    long concurrent = measure(8);
+
+    System.out.println("pipeline   | ms per create");
+    System.out.printf("sequential | %13d%n", sequential);
+    System.out.printf("concurrent | %13d%n", concurrent);
+    assertTrue(concurrent < sequential);
+  }
+
+  private long measure(int concurrency) {
+    FanOutExecutor fanOutExecutor = new FanOutExecutor(16, concurrency);
+    try {
+      CodeSnippetService service = createService(fanOutExecutor);
+      service.createSnippet(snippet(), "user");
+
+      long start = System.nanoTime();
+      for (int i = 0; i < RUNS; i++) {
+        service.createSnippet(snippet(), "user");
+      }
+      return (System.nanoTime() - start) / 1_000_000 / RUNS;
+    } finally {
+      fanOutExecutor.destroy();
+    }
+  }
+
+  private SnippetReceivedDto snippet() {
+    return SnippetReceivedDto.builder()
+        .content(new MockMultipartFile("content", "let a: number = 1;".getBytes()))
+        .language("PRINTSCRIPT")
+        .version("1.1")
+        .name("snippet")
+        .extension("ps")
+        .build();
+  }
+
+  private CodeSnippetService createService(FanOutExecutor fanOutExecutor) {
+    CodeSnippetRepository codeSnippetRepository = mock(CodeSnippetRepository.class);
+    PermissionManager permissionManager = mock(PermissionManager.class);
+    AssetManager assetManager = mock(AssetManager.class);
+    PrintscriptManager printscriptManager = mock(PrintscriptManager.class);
+
+    when(codeSnippetRepository.save(any(CodeSnippet.class)))
+        .thenAnswer(
+            invocation -> {
+              CodeSnippet codeSnippet = invocation.getArgument(0);
+              codeSnippet.setAssetId(UUID.randomUUID().toString());
+              return codeSnippet;
+            });
+    when(printscriptManager.compile(anyString(), any(), any(CodeLanguage.class), anyString()))
+        .thenAnswer(invocation -> respondAfter(COMPILE_LATENCY_MS, "compiled"));
+    when(permissionManager.createNewPermission(anyString(), eq(PermissionType.READ_WRITE)))
+        .thenAnswer(invocation -> respondAfter(PERMISSION_LATENCY_MS, "created"));
+    when(assetManager.createAsset(eq("snippets"), anyString(), any(MultipartFile.class)))
+        .thenAnswer(invocation -> respondAfter(ASSET_LATENCY_MS, "created"));
+
+    CodeSnippetService service =
+        new CodeSnippetService(
+            codeSnippetRepository,
+            mock(LintProducer.class),
+            permissionManager,
+            printscriptManager,
+            assetManager,
+            mock(LintingRuleRepository.class),
+            mock(FormatterRuleRepository.class),
+            mock(LintingRuleService.class),
+            mock(FormatterRuleService.class),
+            mock(LanguagesRepository.class),
+            mock(FormatterProducer.class),
+            mock(UserService.class),
+            fanOutExecutor);
+    ReflectionTestUtils.setField(
+        service, "snippetRevisionService", mock(SnippetRevisionService.class));
+    return service;
+  }
+
+  private ResponseEntity<String> respondAfter(long millis, String body)
+      throws InterruptedException {
+    Thread.sleep(millis);
+    return ResponseEntity.ok(body);
+  }
+}
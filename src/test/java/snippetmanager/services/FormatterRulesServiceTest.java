@@ -6,12 +6,14 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockitoAnnotations;
@@ -75,8 +77,7 @@ public class FormatterRulesServiceTest {
             });
     when(assetManager.createAsset(anyString(), anyString(), any(MultipartFile.class)))
         .thenReturn(ResponseEntity.ok("Success"));
-    when(codeSnippetService.getAllOwnSnippets(eq(userId)))
-        .thenReturn(List.of(createSnippetSendDto(), createSnippetSendDto()));
+    stubOwnSnippets(userId);
     when(formatterRuleRepository.findByNameAndUserId(anyString(), eq(userId)))
         .thenReturn(Optional.empty());
 
@@ -102,8 +103,7 @@ public class FormatterRulesServiceTest {
             });
     when(assetManager.createAsset(anyString(), anyString(), any(MultipartFile.class)))
         .thenReturn(ResponseEntity.ok("Success"));
-    when(codeSnippetService.getAllOwnSnippets(eq(userId)))
-        .thenReturn(List.of(createSnippetSendDto(), createSnippetSendDto()));
+    stubOwnSnippets(userId);
     when(formatterRuleRepository.findByNameAndUserId(anyString(), eq(userId)))
         .thenReturn(Optional.empty());
 
@@ -128,8 +128,7 @@ public class FormatterRulesServiceTest {
             });
     when(assetManager.createAsset(anyString(), anyString(), any(MultipartFile.class)))
         .thenReturn(ResponseEntity.ok("Success"));
-    when(codeSnippetService.getAllOwnSnippets(eq(userId)))
-        .thenReturn(List.of(createSnippetSendDto(), createSnippetSendDto()));
+    stubOwnSnippets(userId);
     when(formatterRuleRepository.findByNameAndUserId(anyString(), eq(userId)))
         .thenReturn(Optional.of(new FormatterRule()));
 
@@ -160,6 +159,17 @@ public class FormatterRulesServiceTest {
     return RuleDto.builder().name(ruleName).value(ruleValue).isActive(true).build();
   }
 
+  private void stubOwnSnippets(String userId) {
+    doAnswer(
+            invocation -> {
+              Consumer<SnippetSendDto> action = invocation.getArgument(1);
+              List.of(createSnippetSendDto(), createSnippetSendDto()).forEach(action);
+              return null;
+            })
+        .when(codeSnippetService)
+        .forEachOwnSnippet(eq(userId), any());
+  }
+
   private SnippetSendDto createSnippetSendDto() {
     return SnippetSendDto.builder()
         .assetId(UUID.randomUUID().toString())
@@ -6,12 +6,14 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Consumer;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.MockitoAnnotations;
@@ -78,8 +80,7 @@ public class LinterRulesServiceTest {
             });
     when(assetManager.createAsset(anyString(), anyString(), any(MultipartFile.class)))
         .thenReturn(ResponseEntity.ok("Success"));
-    when(codeSnippetService.getAllOwnSnippets(eq(userId)))
-        .thenReturn(List.of(createSnippetSendDto(), createSnippetSendDto()));
+    stubOwnSnippets(userId);
     when(lintingRuleRepository.findByNameAndUserId(anyString(), eq(userId)))
         .thenReturn(Optional.empty());
 
@@ -105,8 +106,7 @@ public class LinterRulesServiceTest {
             });
     when(assetManager.createAsset(anyString(), anyString(), any(MultipartFile.class)))
         .thenReturn(ResponseEntity.ok("Success"));
-    when(codeSnippetService.getAllOwnSnippets(eq(userId)))
-        .thenReturn(List.of(createSnippetSendDto(), createSnippetSendDto()));
+    stubOwnSnippets(userId);
     when(lintingRuleRepository.findByNameAndUserId(anyString(), eq(userId)))
         .thenReturn(Optional.empty());
 
@@ -131,8 +131,7 @@ public class LinterRulesServiceTest {
             });
     when(assetManager.createAsset(anyString(), anyString(), any(MultipartFile.class)))
         .thenReturn(ResponseEntity.ok("Success"));
-    when(codeSnippetService.getAllOwnSnippets(eq(userId)))
-        .thenReturn(List.of(createSnippetSendDto(), createSnippetSendDto()));
+    stubOwnSnippets(userId);
     when(lintingRuleRepository.findByNameAndUserId(anyString(), eq(userId)))
         .thenReturn(Optional.of(new LintingRule()));
 
@@ -163,6 +162,17 @@ public class LinterRulesServiceTest {
     return RuleDto.builder().name(ruleName).value(ruleValue).isActive(true).build();
   }
 
+  private void stubOwnSnippets(String userId) {
+    doAnswer(
+            invocation -> {
+              Consumer<SnippetSendDto> action = invocation.getArgument(1);
+              List.of(createSnippetSendDto(), createSnippetSendDto()).forEach(action);
+              return null;
+            })
+        .when(codeSnippetService)
+        .forEachOwnSnippet(eq(userId), any());
+  }
+
   private SnippetSendDto createSnippetSendDto() {
     return SnippetSendDto.builder()
         .assetId(UUID.randomUUID().toString())
@@ -0,0 +1,112 @@
+package snippetmanager.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.PermissionDeniedDataAccessException;
+import reactor.core.publisher.Mono;
+import snippetmanager.model.dtos.SnippetSendDto;
+import snippetmanager.model.entities.CodeSnippet;
+import snippetmanager.util.enums.CodeLanguage;
+import snippetmanager.webservice.asset.AssetManager;
+import snippetmanager.webservice.permission.PermissionManager;
+import snippetmanager.webservice.printscript.PrintscriptManager;
+
+public class ReactiveCodeSnippetServiceTest {
+
+  private CodeSnippetService codeSnippetService;
+
+  private PermissionManager permissionManager;
+
+  private AssetManager assetManager;
+
+  private ReactiveCodeSnippetService reactiveCodeSnippetService;
+
+  @BeforeEach
+  void setUp() {
+    codeSnippetService = mock(CodeSnippetService.class);
+    permissionManager = mock(PermissionManager.class);
+    assetManager = mock(AssetManager.class);
+    reactiveCodeSnippetService =
+        new ReactiveCodeSnippetService(
+            codeSnippetService,
+            permissionManager,
+            assetManager,
+            mock(PrintscriptManager.class),
+            mock(UserService.class),
+            8);
+  }
+
+  @Test
+  void getSnippetCombinesRowAndContent() {
+    CodeSnippet codeSnippet = new CodeSnippet();
+    codeSnippet.setAssetId("a");
+    codeSnippet.setLanguage(CodeLanguage.PRINTSCRIPT);
+    byte[] content = "println(1);".getBytes();
+    SnippetSendDto expected = SnippetSendDto.builder().assetId("a").content("println(1);").build();
+    when(permissionManager.canReadAsync("a")).thenReturn(Mono.just(true));
+    when(assetManager.getAssetAsync("snippets", "a")).thenReturn(Mono.just(content));
+    when(codeSnippetService.findSnippetByAssetId("a")).thenReturn(codeSnippet);
+    when(codeSnippetService.toSnippetSendDto(codeSnippet, content, "user")).thenReturn(expected);
+
+    assertEquals(expected, reactiveCodeSnippetService.getSnippet("a", "user").block());
+  }
+
+  @Test
+  void getSnippetDeniedSkipsTheLookup() {
+    when(permissionManager.canReadAsync("a")).thenReturn(Mono.just(false));
+    when(assetManager.getAssetAsync("snippets", "a")).thenReturn(Mono.just(new byte[0]));
+
+    assertThrows(
+        PermissionDeniedDataAccessException.class,
+        () -> reactiveCodeSnippetService.getSnippet("a", "user").block());
+    verify(codeSnippetService, never()).findSnippetByAssetId("a");
+  }
+
+  @Test
+  void matchingEtagIsAnsweredFromOneLookupWithoutTheContent() {
+    CodeSnippet codeSnippet = new CodeSnippet();
+    codeSnippet.setAssetId("a");
+    when(permissionManager.canReadAsync("a")).thenReturn(Mono.just(true));
+    when(codeSnippetService.findSnippetByAssetId("a")).thenReturn(codeSnippet);
+    when(codeSnippetService.etag(codeSnippet, "user")).thenReturn("abc");
+
+    CodeSnippetService.Tagged<SnippetSendDto> snippet =
+        reactiveCodeSnippetService.getSnippet("a", "user", "\"abc\"").block();
+
+    assertEquals("abc", snippet.etag());
+    assertNull(snippet.body());
+    verify(permissionManager, times(1)).canReadAsync("a");
+    verify(codeSnippetService, times(1)).findSnippetByAssetId("a");
+    verify(assetManager, never()).getAssetAsync("snippets", "a");
+  }
+
+  @Test
+  void changedEtagLoadsTheBodyFromTheSameRow() {
+    CodeSnippet codeSnippet = new CodeSnippet();
+    codeSnippet.setAssetId("a");
+    byte[] content = "println(1);".getBytes();
+    SnippetSendDto expected = SnippetSendDto.builder().assetId("a").content("println(1);").build();
+    when(permissionManager.canReadAsync("a")).thenReturn(Mono.just(true));
+    when(codeSnippetService.findSnippetByAssetId("a")).thenReturn(codeSnippet);
+    when(codeSnippetService.etag(codeSnippet, "user")).thenReturn("abc");
+    when(assetManager.getAssetAsync("snippets", "a")).thenReturn(Mono.just(content));
+    when(codeSnippetService.toSnippetSendDto(codeSnippet, content, "user")).thenReturn(expected);
+
+    CodeSnippetService.Tagged<SnippetSendDto> snippet =
+        reactiveCodeSnippetService.getSnippet("a", "user", "\"old\"").block();
+
+    assertEquals("abc", snippet.etag());
+    assertEquals(expected, snippet.body());
+    verify(permissionManager, times(1)).canReadAsync("a");
+    verify(codeSnippetService, times(1)).findSnippetByAssetId("a");
+  }
+}
@@ -0,0 +1,154 @@
+package snippetmanager.services;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import snippetmanager.model.entities.CodeSnippet;
+import snippetmanager.redis.formatter.FormatterProducer;
+import snippetmanager.redis.linter.LintProducer;
+import snippetmanager.repositories.CodeSnippetRepository;
+import snippetmanager.repositories.FormatterRuleRepository;
+import snippetmanager.repositories.LanguagesRepository;
+import snippetmanager.repositories.LintingRuleRepository;
+import snippetmanager.util.FanOutExecutor;
+import snippetmanager.util.enums.CodeLanguage;
+import snippetmanager.webservice.asset.AssetManager;
+import snippetmanager.webservice.permission.PermissionManager;
+import snippetmanager.webservice.printscript.PrintscriptManager;
+
+// Run with ./gradlew benchmark
+// GET /api/snippet/{id} under load: a fixed pool of request threads blocking on the permission
+// and asset calls, against the reactive stack keeping the same calls in flight without threads.
+@Tag("benchmark")
+class ReactiveSnippetLoadBenchmarkTest {
+  private static final long PERMISSION_LATENCY_MS = 5;
+  private static final long ASSET_LATENCY_MS = 20;
+  private static final int REQUESTS = 4000;
+  private static final int IN_FLIGHT = 256;
+  private static final int CORES = Runtime.getRuntime().availableProcessors();
+
+  private final PermissionManager permissionManager = mock(PermissionManager.class);
+
+  private final AssetManager assetManager = mock(AssetManager.class);
+
+  @Test
+  void throughputPerCore() throws Exception {
+    FanOutExecutor fanOutExecutor = new FanOutExecutor(16, 8);
+    try {
+      CodeSnippetService codeSnippetService = createService(fanOutExecutor);
+      ReactiveCodeSnippetService reactiveService =
+          new ReactiveCodeSnippetService(
+              codeSnippetService,
+              permissionManager,
+              assetManager,
+              mock(PrintscriptManager.class),
+              mock(UserService.class),
+              8);
+
+      runBlocking(codeSnippetService, REQUESTS / 10);
+      runReactive(reactiveService, REQUESTS / 10);
+
+      double blocking = perCore(REQUESTS, runBlocking(codeSnippetService, REQUESTS));
+      double reactive = perCore(REQUESTS, runReactive(reactiveService, REQUESTS));
+
+      System.out.printf("cores: %d, request threads: %d%n", CORES, CORES * 2);
+      System.out.println("stack    | requests/s per core");
+      System.out.printf("blocking | %19.1f%n", blocking);
+      System.out.printf("reactive | %19.1f%n", reactive);
+      assertTrue(reactive > blocking);
+    } finally {
+      fanOutExecutor.destroy();
+    }
+  }
+
+  // Two request threads per core, as a servlet container sized for CPU work would have
+  private long runBlocking(CodeSnippetService service, int requests) throws Exception {
+    ExecutorService requestThreads = Executors.newFixedThreadPool(CORES * 2);
+    try {
+      long start = System.nanoTime();
+      List<Future<?>> responses = new ArrayList<>(requests);
+      for (int i = 0; i < requests; i++) {
+        responses.add(requestThreads.submit(() -> service.getSnippet("snippet", "user")));
+      }
+      for (Future<?> response : responses) {
+        response.get();
+      }
+      return System.nanoTime() - start;
+    } finally {
+      requestThreads.shutdown();
+    }
+  }
+
+  private long runReactive(ReactiveCodeSnippetService service, int requests) {
+    long start = System.nanoTime();
+    Flux.range(0, requests)
+        .flatMap(request -> service.getSnippet("snippet", "user"), IN_FLIGHT)
+        .blockLast();
+    return System.nanoTime() - start;
+  }
+
+  private double perCore(int requests, long elapsedNanos) {
+    return requests / (elapsedNanos / 1e9) / CORES;
+  }
+
+  private CodeSnippetService createService(FanOutExecutor fanOutExecutor) {
+    CodeSnippetRepository codeSnippetRepository = mock(CodeSnippetRepository.class);
+
+    CodeSnippet codeSnippet = new CodeSnippet();
+    codeSnippet.setAssetId("snippet");
+    codeSnippet.setLanguage(CodeLanguage.PRINTSCRIPT);
+    codeSnippet.setVersion("1.1");
+    when(codeSnippetRepository.findCodeSnippetByAssetId("snippet"))
+        .thenReturn(Optional.of(codeSnippet));
+
+    byte[] content = "let a: number = 1;".getBytes();
+    when(permissionManager.canRead("snippet"))
+        .thenAnswer(
+            invocation -> {
+              Thread.sleep(PERMISSION_LATENCY_MS);
+              return true;
+            });
+    when(permissionManager.canReadAsync("snippet"))
+        .thenAnswer(
+            invocation -> Mono.delay(Duration.ofMillis(PERMISSION_LATENCY_MS)).thenReturn(true));
+    when(assetManager.getAsset(eq("snippets"), anyString()))
+        .thenAnswer(
+            invocation -> {
+              Thread.sleep(ASSET_LATENCY_MS);
+              return new ByteArrayInputStream(content);
+            });
+    when(assetManager.getAssetAsync(eq("snippets"), anyString()))
+        .thenAnswer(
+            invocation -> Mono.delay(Duration.ofMillis(ASSET_LATENCY_MS)).thenReturn(content));
+
+    return new CodeSnippetService(
+        codeSnippetRepository,
+        mock(LintProducer.class),
+        permissionManager,
+        mock(PrintscriptManager.class),
+        assetManager,
+        mock(LintingRuleRepository.class),
+        mock(FormatterRuleRepository.class),
+        mock(LintingRuleService.class),
+        mock(FormatterRuleService.class),
+        mock(LanguagesRepository.class),
+        mock(FormatterProducer.class),
+        mock(UserService.class),
+        fanOutExecutor);
+  }
+}
@@ -0,0 +1,133 @@
+package snippetmanager.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import snippetmanager.model.dtos.AllSnippetsRecieveDto;
+import snippetmanager.model.dtos.AllSnippetsSendDto;
+import snippetmanager.model.dtos.SnippetIdAuthorDto;
+import snippetmanager.model.entities.CodeSnippet;
+import snippetmanager.redis.formatter.FormatterProducer;
+import snippetmanager.redis.linter.LintProducer;
+import snippetmanager.repositories.CodeSnippetRepository;
+import snippetmanager.repositories.FormatterRuleRepository;
+import snippetmanager.repositories.LanguagesRepository;
+import snippetmanager.repositories.LintingRuleRepository;
+import snippetmanager.util.FanOutExecutor;
+import snippetmanager.util.enums.CodeLanguage;
+import snippetmanager.util.enums.PermissionType;
+import snippetmanager.webservice.asset.AssetManager;
+import snippetmanager.webservice.permission.PermissionManager;
+import snippetmanager.webservice.printscript.PrintscriptManager;
+
+// Run with ./gradlew benchmark
+@Tag("benchmark")
+class SnippetListingBenchmarkTest {
+  private static final long ASSET_LATENCY_MS = 20;
+  private static final long USER_LATENCY_MS = 5;
+  private static final int[] PAGE_SIZES = {1, 10, 25, 50};
+
+  @Test
+  void pageLatencyByPageSize() {
+    System.out.println("page size | sequential ms | fan-out ms");
+    long sequentialAtMax = 0;
+    long parallelAtMax = 0;
+    for (int pageSize : PAGE_SIZES) {
+      long sequential = measure(pageSize, 1);
+      long parallel = measure(pageSize, 8);
+      System.out.printf("%9d | %13d | %10d%n", pageSize, sequential, parallel);
+      sequentialAtMax = sequential;
+      parallelAtMax = parallel;
+    }
+    assertTrue(parallelAtMax < sequentialAtMax);
+  }
+
+  private long measure(int pageSize, int concurrency) {
+    FanOutExecutor fanOutExecutor = new FanOutExecutor(16, concurrency);
+    try {
+      CodeSnippetService service = createService(pageSize, fanOutExecutor);
+      service.getAllSnippets(0, pageSize, "user");
+
+      long start = System.nanoTime();
+      AllSnippetsSendDto page = service.getAllSnippets(0, pageSize, "user");
+      long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+      assertEquals(pageSize, page.getSnippets().size());
+      return elapsed;
+    } finally {
+      fanOutExecutor.destroy();
+    }
+  }
+
+  private CodeSnippetService createService(int pageSize, FanOutExecutor fanOutExecutor) {
+    CodeSnippetRepository codeSnippetRepository = mock(CodeSnippetRepository.class);
+    PermissionManager permissionManager = mock(PermissionManager.class);
+    AssetManager assetManager = mock(AssetManager.class);
+    UserService userService = mock(UserService.class);
+
+    List<SnippetIdAuthorDto> ids = new ArrayList<>();
+    List<CodeSnippet> rows = new ArrayList<>();
+    for (int i = 0; i < pageSize; i++) {
+      String assetId = UUID.randomUUID().toString();
+      ids.add(SnippetIdAuthorDto.builder().snippetId(assetId).author("author").build());
+
+      CodeSnippet codeSnippet = new CodeSnippet();
+      codeSnippet.setAssetId(assetId);
+      codeSnippet.setLanguage(CodeLanguage.PRINTSCRIPT);
+      codeSnippet.setVersion("1.1");
+      rows.add(codeSnippet);
+    }
+    when(codeSnippetRepository.findAllByAssetIdIn(anyCollection())).thenReturn(rows);
+
+    when(permissionManager.getSnippetsUserWithPermission(
+            0, pageSize, PermissionType.READ.toString()))
+        .thenReturn(
+            ResponseEntity.ok(
+                AllSnippetsRecieveDto.builder().snippetsIds(ids).maxSnippets(pageSize).build()));
+    when(assetManager.getAsset(eq("snippets"), anyString()))
+        .thenAnswer(
+            invocation -> {
+              Thread.sleep(ASSET_LATENCY_MS);
+              return new ByteArrayInputStream("let a: number = 1;".getBytes());
+            });
+    when(userService.getUserNames(anyCollection()))
+        .thenAnswer(
+            invocation -> {
+              Thread.sleep(USER_LATENCY_MS);
+              return Map.of("author", "userName");
+            });
+
+    CodeSnippetService service =
+        new CodeSnippetService(
+            codeSnippetRepository,
+            mock(LintProducer.class),
+            permissionManager,
+            mock(PrintscriptManager.class),
+            assetManager,
+            mock(LintingRuleRepository.class),
+            mock(FormatterRuleRepository.class),
+            mock(LintingRuleService.class),
+            mock(FormatterRuleService.class),
+            mock(LanguagesRepository.class),
+            mock(FormatterProducer.class),
+            userService,
+            fanOutExecutor);
+    ReflectionTestUtils.setField(service, "defaultPageSize", 20);
+    ReflectionTestUtils.setField(service, "maxPageSize", 100);
+    return service;
+  }
+}
@@ -0,0 +1,110 @@
+package snippetmanager.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import jakarta.persistence.EntityNotFoundException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+import snippetmanager.model.dtos.SnippetRevisionDto;
+import snippetmanager.model.entities.CodeSnippet;
+import snippetmanager.model.entities.SnippetRevision;
+import snippetmanager.repositories.CodeSnippetRepository;
+import snippetmanager.repositories.SnippetRevisionRepository;
+
+@DataJpaTest
+@ActiveProfiles("test")
+public class SnippetRevisionServiceTest {
+  private static final String ASSET_ID = "asset";
+
+  @Autowired private SnippetRevisionRepository snippetRevisionRepository;
+
+  @Autowired private CodeSnippetRepository codeSnippetRepository;
+
+  private SnippetRevisionService snippetRevisionService;
+
+  @BeforeEach
+  void setUp() {
+    snippetRevisionService =
+        new SnippetRevisionService(snippetRevisionRepository, codeSnippetRepository, 3);
+  }
+
+  @Test
+  void everyRevisionCanBeRebuilt() {
+    List<String> contents = recordRevisions(8);
+
+    for (int revision = 1; revision <= contents.size(); revision++) {
+      assertEquals(contents.get(revision - 1), snippetRevisionService.rebuild(ASSET_ID, revision));
+    }
+  }
+
+  @Test
+  void checkpointsAreStoredEveryInterval() {
+    recordRevisions(8);
+
+    List<SnippetRevision> revisions =
+        snippetRevisionRepository.findAllByAssetIdOrderByRevisionNumberAsc(ASSET_ID);
+
+    assertEquals(8, revisions.size());
+    for (SnippetRevision revision : revisions) {
+      assertEquals(
+          (revision.getRevisionNumber() - 1) % 3 == 0,
+          revision.isCheckpoint(),
+          "revision " + revision.getRevisionNumber());
+    }
+    // A one-line edit is stored as a delta, not a copy
+    SnippetRevision delta = revisions.get(1);
+    assertFalse(delta.isCheckpoint());
+    assertTrue(delta.getContent().length() < revisions.get(0).getContent().length());
+  }
+
+  @Test
+  void revisionsAreListedInOrder() {
+    recordRevisions(4);
+
+    List<SnippetRevisionDto> revisions = snippetRevisionService.getRevisions(ASSET_ID);
+
+    assertEquals(
+        List.of(1, 2, 3, 4), revisions.stream().map(SnippetRevisionDto::getRevision).toList());
+  }
+
+  @Test
+  void revisionsOfAStoredSnippetAreNumberedUnderItsLock() {
+    CodeSnippet codeSnippet = codeSnippetRepository.save(new CodeSnippet());
+    String assetId = codeSnippet.getAssetId();
+
+    assertEquals(1, snippetRevisionService.recordRevision(assetId, "user", "println(1);\n"));
+    assertEquals(2, snippetRevisionService.recordRevision(assetId, "user", "println(2);\n"));
+    assertEquals("println(2);\n", snippetRevisionService.rebuild(assetId, 2));
+  }
+
+  @Test
+  void unknownRevisionIsNotFound() {
+    recordRevisions(2);
+
+    assertThrows(EntityNotFoundException.class, () -> snippetRevisionService.rebuild(ASSET_ID, 5));
+    assertThrows(EntityNotFoundException.class, () -> snippetRevisionService.rebuild("other", 1));
+  }
+
+  private List<String> recordRevisions(int count) {
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      lines.add("let value" + i + ": number = " + i + ";");
+    }
+    List<String> contents = new ArrayList<>();
+    for (int revision = 1; revision <= count; revision++) {
+      lines.set(revision * 3, "println(" + revision + ");");
+      String content = String.join("\n", lines) + "\n";
+      snippetRevisionService.recordRevision(ASSET_ID, "user", content);
+      contents.add(content);
+    }
+    return contents;
+  }
+}
@@ -0,0 +1,126 @@
+package snippetmanager.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.multipart.MultipartFile;
+import snippetmanager.model.dtos.SnippetReceivedDto;
+import snippetmanager.model.dtos.SnippetRevisionDto;
+import snippetmanager.model.entities.CodeSnippet;
+import snippetmanager.redis.compiler.CompileProducer;
+import snippetmanager.redis.formatter.FormatterProducer;
+import snippetmanager.redis.linter.LintProducer;
+import snippetmanager.repositories.CodeSnippetRepository;
+import snippetmanager.util.ContentDigest;
+import snippetmanager.util.enums.CodeLanguage;
+import snippetmanager.webservice.WebClientUtility;
+import snippetmanager.webservice.asset.AssetManager;
+import snippetmanager.webservice.permission.PermissionManager;
+import snippetmanager.webservice.printscript.PrintscriptManager;
+
+// Runs updates against the real database, so the row lock is what orders them
+@ActiveProfiles("test")
+@SpringBootTest
+class SnippetUpdateConcurrencyTest {
+  @MockBean private WebClientUtility webClientUtility;
+
+  @MockBean private PermissionManager permissionManager;
+
+  @MockBean private AssetManager assetManager;
+
+  @MockBean private PrintscriptManager printscriptManager;
+
+  @MockBean private UserService userService;
+
+  @MockBean private LintProducer lintProducer;
+
+  @MockBean private FormatterProducer formatterProducer;
+
+  @MockBean private CompileProducer compileProducer;
+
+  @Autowired private CodeSnippetRepository codeSnippetRepository;
+
+  @Autowired private SnippetRevisionService snippetRevisionService;
+
+  @Autowired private CodeSnippetService codeSnippetService;
+
+  @Test
+  void concurrentUpdatesLeaveTheLatestRevisionMatchingTheStoredContent() throws Exception {
+    CodeSnippet codeSnippet = new CodeSnippet();
+    codeSnippet.setName("snippet");
+    codeSnippet.setLanguage(CodeLanguage.PRINTSCRIPT);
+    codeSnippet.setVersion("1.1");
+    codeSnippet.setContentHash(ContentDigest.sha256("println(0);"));
+    String assetId = codeSnippetRepository.save(codeSnippet).getAssetId();
+    snippetRevisionService.recordRevision(assetId, "user", "println(0);");
+
+    when(permissionManager.canWrite(assetId)).thenReturn(true);
+    when(printscriptManager.compile(anyString(), any(), any(CodeLanguage.class), anyString()))
+        .thenReturn(ResponseEntity.ok("compiled"));
+    AtomicReference<String> stored = new AtomicReference<>("println(0);");
+    CountDownLatch firstUploading = new CountDownLatch(1);
+    CountDownLatch secondDone = new CountDownLatch(1);
+    when(assetManager.createAsset(eq("snippets"), eq(assetId), any(MultipartFile.class)))
+        .thenAnswer(
+            invocation -> {
+              MultipartFile content = invocation.getArgument(2);
+              stored.set(new String(content.getBytes(), StandardCharsets.UTF_8));
+              if (stored.get().equals("println(1);")) {
+                firstUploading.countDown();
+                // Without the lock the second update uploads and records its revision here
+                secondDone.await(500, TimeUnit.MILLISECONDS);
+              }
+              return ResponseEntity.ok("stored");
+            });
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<?> first = executor.submit(() -> update(assetId, "println(1);"));
+      firstUploading.await(5, TimeUnit.SECONDS);
+      Future<?> second =
+          executor.submit(
+              () -> {
+                update(assetId, "println(2);");
+                secondDone.countDown();
+              });
+      first.get(10, TimeUnit.SECONDS);
+      second.get(10, TimeUnit.SECONDS);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    List<SnippetRevisionDto> revisions = snippetRevisionService.getRevisions(assetId);
+    int latest = revisions.get(revisions.size() - 1).getRevision();
+    assertEquals(3, revisions.size());
+    assertEquals(stored.get(), snippetRevisionService.rebuild(assetId, latest));
+    assertEquals(
+        ContentDigest.sha256(stored.get()),
+        codeSnippetRepository.findById(assetId).orElseThrow().getContentHash());
+  }
+
+  private void update(String assetId, String content) {
+    MockMultipartFile file =
+        new MockMultipartFile(
+            "content", "snippet.ps", "text/plain", content.getBytes(StandardCharsets.UTF_8));
+    codeSnippetService.updateSnippet(
+        assetId, "user", SnippetReceivedDto.builder().content(file).build());
+  }
+}
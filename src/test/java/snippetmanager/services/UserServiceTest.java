@@ -0,0 +1,132 @@
+package snippetmanager.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import snippetmanager.model.entities.User;
+import snippetmanager.repositories.UserRepository;
+
+public class UserServiceTest {
+
+  private UserRepository userRepository;
+
+  private UserService userService;
+
+  @BeforeEach
+  void setUp() {
+    userRepository = mock(UserRepository.class);
+    userService =
+        new UserService(
+            userRepository,
+            new SimpleMeterRegistry(),
+            100,
+            Duration.ofMinutes(5),
+            Duration.ofSeconds(5));
+
+    SecurityContext securityContext = mock(SecurityContext.class);
+    Authentication authentication = mock(Authentication.class);
+    Jwt jwt = mock(Jwt.class);
+
+    when(securityContext.getAuthentication()).thenReturn(authentication);
+    when(authentication.getPrincipal()).thenReturn(jwt);
+    when(jwt.getClaimAsString("username")).thenReturn("user@mail.com");
+
+    SecurityContextHolder.setContext(securityContext);
+  }
+
+  @Test
+  void getUserNameIsCached() {
+    when(userRepository.findById("1")).thenReturn(Optional.of(createUser("1", "one")));
+
+    assertEquals("one", userService.getUserName("1"));
+    assertEquals("one", userService.getUserName("1"));
+
+    verify(userRepository, times(1)).findById("1");
+  }
+
+  @Test
+  void cacheKeepsTheNameRatherThanTheEntity() {
+    User user = createUser("1", "one");
+    when(userRepository.findById("1")).thenReturn(Optional.of(user));
+
+    userService.getUserName("1");
+    user.setName("changed outside the cache");
+
+    assertEquals("one", userService.getUserName("1"));
+  }
+
+  @Test
+  void getUserNamesLoadsMissingUsersInOneQuery() {
+    when(userRepository.findById("1")).thenReturn(Optional.of(createUser("1", "one")));
+    when(userRepository.findAllById(any())).thenReturn(List.of(createUser("2", "two")));
+    userService.getUserName("1");
+
+    Map<String, String> names = userService.getUserNames(List.of("1", "2", "3"));
+
+    assertEquals("one", names.get("1"));
+    assertEquals("two", names.get("2"));
+    assertNull(names.get("3"));
+    verify(userRepository, times(1)).findAllById(any());
+  }
+
+  @Test
+  void createUserRefreshesTheCache() {
+    when(userRepository.findById("1")).thenReturn(Optional.empty());
+
+    assertNull(userService.getUserName("1"));
+    userService.createUser("1");
+    userService.createUser("1");
+
+    assertEquals("user@mail.com", userService.getUserName("1"));
+    verify(userRepository, times(1)).findById("1");
+    verify(userRepository, times(1)).save(any(User.class));
+  }
+
+  @Test
+  void absentUsersAreLookedUpAgainAfterTheNegativeTtl() {
+    userService =
+        new UserService(
+            userRepository, new SimpleMeterRegistry(), 100, Duration.ofMinutes(5), Duration.ZERO);
+    when(userRepository.findById("2"))
+        .thenReturn(Optional.empty(), Optional.of(createUser("2", "two")));
+
+    assertNull(userService.getUserName("2"));
+    // Created from another node in the meantime
+    assertEquals("two", userService.getUserName("2"));
+
+    verify(userRepository, times(2)).findById("2");
+  }
+
+  @Test
+  void createUserSkipsExistingUsers() {
+    when(userRepository.findById("1")).thenReturn(Optional.of(createUser("1", "one")));
+
+    userService.createUser("1");
+
+    verify(userRepository, never()).save(any(User.class));
+  }
+
+  private User createUser(String userId, String name) {
+    User user = new User();
+    user.setUserId(userId);
+    user.setName(name);
+    return user;
+  }
+}
@@ -0,0 +1,108 @@
+package snippetmanager.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+public class FanOutExecutorTest {
+
+  private FanOutExecutor fanOutExecutor;
+
+  @AfterEach
+  void tearDown() {
+    fanOutExecutor.destroy();
+    SecurityContextHolder.clearContext();
+    TransactionSynchronizationManager.setActualTransactionActive(false);
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void mapOrderedKeepsTheCallersOrder(boolean virtualThreads) {
+    fanOutExecutor = new FanOutExecutor(4, 3, virtualThreads);
+
+    List<Integer> results =
+        fanOutExecutor.mapOrdered(
+            List.of(1, 2, 3, 4, 5),
+            item -> {
+              sleep(10L * (6 - item));
+              return item * 10;
+            });
+
+    assertEquals(List.of(10, 20, 30, 40, 50), results);
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void firstFailureCancelsTheSiblings(boolean virtualThreads) throws InterruptedException {
+    fanOutExecutor = new FanOutExecutor(4, 3, virtualThreads);
+    CountDownLatch interrupted = new CountDownLatch(1);
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            fanOutExecutor.mapOrdered(
+                List.of(0, 1),
+                item -> {
+                  if (item == 1) {
+                    throw new IllegalArgumentException("failed");
+                  }
+                  try {
+                    Thread.sleep(10_000);
+                  } catch (InterruptedException e) {
+                    interrupted.countDown();
+                  }
+                  return item;
+                }));
+
+    assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void securityContextReachesTheWorkers(boolean virtualThreads) {
+    fanOutExecutor = new FanOutExecutor(4, 3, virtualThreads);
+    SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+    securityContext.setAuthentication(mock(Authentication.class));
+    SecurityContextHolder.setContext(securityContext);
+
+    List<Authentication> seen =
+        fanOutExecutor.mapOrdered(
+            List.of(1, 2, 3), item -> SecurityContextHolder.getContext().getAuthentication());
+
+    seen.forEach(authentication -> assertSame(securityContext.getAuthentication(), authentication));
+  }
+
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  void workInsideATransactionStaysOnTheCaller(boolean virtualThreads) {
+    fanOutExecutor = new FanOutExecutor(4, 3, virtualThreads);
+    TransactionSynchronizationManager.setActualTransactionActive(true);
+    Thread caller = Thread.currentThread();
+
+    List<Thread> threads =
+        fanOutExecutor.mapOrdered(List.of(1, 2, 3), item -> Thread.currentThread());
+
+    threads.forEach(thread -> assertSame(caller, thread));
+  }
+
+  private void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package snippetmanager.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class LineDeltaTest {
+
+  @Test
+  void changedLineOnlyStoresTheChange() {
+    String base = "let a: number = 1;\nlet b: number = 2;\nprintln(a);\nprintln(b);";
+    String target = "let a: number = 1;\nlet b: number = 3;\nprintln(a);\nprintln(b);";
+
+    String delta = LineDelta.diff(base, target);
+
+    assertEquals("=1\n+1\nlet b: number = 3;\n-1\n=2", delta);
+    assertEquals(target, LineDelta.apply(base, delta));
+  }
+
+  @Test
+  void trailingNewlinesArePreserved() {
+    assertEquals("a\nb\n", LineDelta.apply("a\nb", LineDelta.diff("a\nb", "a\nb\n")));
+    assertEquals("a\nb", LineDelta.apply("a\nb\n", LineDelta.diff("a\nb\n", "a\nb")));
+    assertEquals("", LineDelta.apply("a", LineDelta.diff("a", "")));
+  }
+
+  @Test
+  void linesThatLookLikeOperationsAreKept() {
+    String target = "=1\n+2\n-3";
+
+    assertEquals(target, LineDelta.apply("x", LineDelta.diff("x", target)));
+  }
+
+  @Test
+  void randomEditsRoundTrip() {
+    Random random = new Random(7);
+    String[] pool = {"a", "b", "c", "", "println(a);", "=2", "+1"};
+    for (int run = 0; run < 2000; run++) {
+      String base = randomText(random, pool);
+      String target = randomText(random, pool);
+
+      assertEquals(target, LineDelta.apply(base, LineDelta.diff(base, target)));
+    }
+  }
+
+  private String randomText(Random random, String[] pool) {
+    StringBuilder builder = new StringBuilder();
+    int lines = random.nextInt(10);
+    for (int i = 0; i < lines; i++) {
+      if (i > 0) {
+        builder.append('\n');
+      }
+      builder.append(pool[random.nextInt(pool.length)]);
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,81 @@
+package snippetmanager.util;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+// Run with ./gradlew benchmark
+// 2000 concurrent requests, each blocking on one downstream call and then fanning out over a
+// page of snippets. Platform mode uses Tomcat's default 200 request threads and the fan-out
+// pool; virtual mode gives every request and every item its own virtual thread.
+@Tag("benchmark")
+class VirtualThreadBenchmarkTest {
+  private static final int REQUESTS = 2000;
+  private static final int PAGE_SIZE = 10;
+  private static final long PERMISSION_LATENCY_MS = 10;
+  private static final long ASSET_LATENCY_MS = 20;
+
+  @Test
+  void throughputAtHighConcurrency() throws Exception {
+    run(false, REQUESTS / 10);
+    run(true, REQUESTS / 10);
+
+    long platform = run(false, REQUESTS);
+    long virtual = run(true, REQUESTS);
+
+    System.out.println("threads  | total ms | requests/s");
+    System.out.printf("platform | %8d | %10.0f%n", platform, REQUESTS * 1000.0 / platform);
+    System.out.printf("virtual  | %8d | %10.0f%n", virtual, REQUESTS * 1000.0 / virtual);
+    assertTrue(virtual < platform);
+  }
+
+  private long run(boolean virtualThreads, int requests) throws Exception {
+    FanOutExecutor fanOutExecutor = new FanOutExecutor(16, 8, virtualThreads);
+    ExecutorService requestThreads =
+        virtualThreads
+            ? Executors.newVirtualThreadPerTaskExecutor()
+            : Executors.newFixedThreadPool(200);
+    List<Integer> page = new ArrayList<>();
+    for (int i = 0; i < PAGE_SIZE; i++) {
+      page.add(i);
+    }
+    try {
+      long start = System.nanoTime();
+      List<Future<List<Integer>>> responses = new ArrayList<>(requests);
+      for (int i = 0; i < requests; i++) {
+        responses.add(
+            requestThreads.submit(
+                () -> {
+                  sleep(PERMISSION_LATENCY_MS);
+                  return fanOutExecutor.mapOrdered(
+                      page,
+                      item -> {
+                        sleep(ASSET_LATENCY_MS);
+                        return item;
+                      });
+                }));
+      }
+      for (Future<List<Integer>> response : responses) {
+        response.get();
+      }
+      return (System.nanoTime() - start) / 1_000_000;
+    } finally {
+      requestThreads.shutdown();
+      fanOutExecutor.destroy();
+    }
+  }
+
+  private void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
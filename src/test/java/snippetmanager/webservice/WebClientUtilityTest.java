@@ -0,0 +1,219 @@
+package snippetmanager.webservice;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+public class WebClientUtilityTest {
+  private static final String CHUNK = "let a: number = 1;\n";
+  private static final String PERMISSION_URL = "http://permissions/api/permission";
+
+  private NettyDataBufferFactory bufferFactory;
+
+  // Every buffer handed to the client, so the test can check they were all released
+  private List<DataBuffer> allocated;
+
+  @BeforeEach
+  void setUp() {
+    bufferFactory = new NettyDataBufferFactory(new UnpooledByteBufAllocator(true));
+    allocated = new CopyOnWriteArrayList<>();
+  }
+
+  @Test
+  void getInputStreamReadsTheWholeBody() throws IOException {
+    WebClientUtility webClientUtility = create(10, 1024 * 1024);
+
+    try (InputStream inputStream = webClientUtility.getInputStream("http://assets/a")) {
+      String body = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+      assertEquals(CHUNK.repeat(10), body);
+    }
+
+    assertEquals(10, allocated.size());
+    assertAllReleased();
+  }
+
+  @Test
+  void closingEarlyReleasesBuffers() throws IOException {
+    WebClientUtility webClientUtility = create(1000, 1024 * 1024);
+
+    try (InputStream inputStream = webClientUtility.getInputStream("http://assets/a")) {
+      byte[] start = inputStream.readNBytes(CHUNK.length());
+      assertArrayEquals(CHUNK.getBytes(StandardCharsets.UTF_8), start);
+    }
+
+    assertAllReleased();
+  }
+
+  @Test
+  void bodyOverTheLimitFails() {
+    WebClientUtility webClientUtility = create(100, CHUNK.length() * 10L);
+
+    assertThrows(
+        Exception.class,
+        () -> {
+          try (InputStream inputStream = webClientUtility.getInputStream("http://assets/a")) {
+            inputStream.readAllBytes();
+          }
+        });
+    assertAllReleased();
+  }
+
+  @Test
+  void downstreamBulkheadRejectsExcessRequests() {
+    DownstreamProperties.Pool pool = new DownstreamProperties.Pool();
+    pool.setUrl("http://permissions");
+    pool.setMaxConcurrentRequests(1);
+    DownstreamProperties downstreamProperties = new DownstreamProperties();
+    downstreamProperties.getDownstreams().put("permission", pool);
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    Sinks.One<ClientResponse> pending = Sinks.one();
+    WebClient.Builder builder = WebClient.builder().exchangeFunction(request -> pending.asMono());
+    WebClientUtility webClientUtility =
+        new WebClientUtility(builder, downstreamProperties, meterRegistry, 1024, 2);
+
+    try {
+      Disposable inFlight =
+          webClientUtility.postAsync(PERMISSION_URL, "a", String.class).subscribe();
+
+      assertThrows(
+          BulkheadFullException.class,
+          () -> webClientUtility.postAsync(PERMISSION_URL, "b", String.class).block());
+      Counter rejected =
+          meterRegistry.counter("webclient.bulkhead.rejected", "downstream", "permission");
+      assertEquals(1, rejected.count());
+
+      // Cancelling the first request frees its slot
+      inFlight.dispose();
+      pending.tryEmitValue(ClientResponse.create(HttpStatus.OK).body("ok").build());
+      ResponseEntity<String> response =
+          webClientUtility.postAsync(PERMISSION_URL, "c", String.class).block();
+      assertEquals("ok", response.getBody());
+    } finally {
+      webClientUtility.destroy();
+    }
+  }
+
+  @Test
+  void openStreamsHoldTheBulkheadUntilClosed() throws IOException {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    WebClientUtility webClientUtility = createAssetDownstream(meterRegistry, Duration.ofMinutes(1));
+
+    try {
+      try (InputStream open = webClientUtility.getInputStream("http://assets/a")) {
+        open.readNBytes(CHUNK.length());
+
+        // The first stream is still open and far from drained
+        assertThrows(
+            Exception.class,
+            () -> {
+              try (InputStream next = webClientUtility.getInputStream("http://assets/b")) {
+                next.readNBytes(CHUNK.length());
+              }
+            });
+        assertEquals(
+            1, meterRegistry.counter("webclient.bulkhead.rejected", "downstream", "asset").count());
+      }
+
+      try (InputStream next = webClientUtility.getInputStream("http://assets/c")) {
+        assertArrayEquals(
+            CHUNK.getBytes(StandardCharsets.UTF_8), next.readNBytes(CHUNK.length()));
+      }
+    } finally {
+      webClientUtility.destroy();
+    }
+  }
+
+  @Test
+  void idleStreamsGiveTheirPermitBack() throws Exception {
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    WebClientUtility webClientUtility =
+        createAssetDownstream(meterRegistry, Duration.ofMillis(100));
+    Gauge available =
+        meterRegistry.get("webclient.bulkhead.available").tag("downstream", "asset").gauge();
+
+    try (InputStream abandoned = webClientUtility.getInputStream("http://assets/a")) {
+      abandoned.readNBytes(CHUNK.length());
+      assertEquals(0, available.value());
+
+      // Never read again nor closed until the end of the test
+      long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+      while (available.value() == 0 && System.nanoTime() < deadline) {
+        Thread.sleep(10);
+      }
+      assertEquals(1, available.value());
+      try (InputStream next = webClientUtility.getInputStream("http://assets/b")) {
+        assertArrayEquals(
+            CHUNK.getBytes(StandardCharsets.UTF_8), next.readNBytes(CHUNK.length()));
+      }
+    } finally {
+      webClientUtility.destroy();
+    }
+  }
+
+  private WebClientUtility createAssetDownstream(
+      SimpleMeterRegistry meterRegistry, Duration streamIdleTimeout) {
+    DownstreamProperties.Pool pool = new DownstreamProperties.Pool();
+    pool.setUrl("http://assets");
+    pool.setMaxConcurrentRequests(1);
+    pool.setStreamIdleTimeout(streamIdleTimeout);
+    DownstreamProperties downstreamProperties = new DownstreamProperties();
+    downstreamProperties.getDownstreams().put("asset", pool);
+    WebClient.Builder builder =
+        WebClient.builder()
+            .exchangeFunction(
+                request ->
+                    Mono.just(ClientResponse.create(HttpStatus.OK).body(body(1000)).build()));
+    return new WebClientUtility(builder, downstreamProperties, meterRegistry, 1 << 20, 2);
+  }
+
+  private WebClientUtility create(int chunks, long maxContentSize) {
+    WebClient.Builder builder =
+        WebClient.builder()
+            .exchangeFunction(
+                request ->
+                    Mono.just(
+                        ClientResponse.create(HttpStatus.OK).body(body(chunks)).build()));
+    return new WebClientUtility(
+        builder, new DownstreamProperties(), new SimpleMeterRegistry(), maxContentSize, 2);
+  }
+
+  private Flux<DataBuffer> body(int chunks) {
+    return Flux.range(0, chunks)
+        .map(
+            i -> {
+              DataBuffer dataBuffer = bufferFactory.allocateBuffer(CHUNK.length());
+              dataBuffer.write(CHUNK, StandardCharsets.UTF_8);
+              allocated.add(dataBuffer);
+              return dataBuffer;
+            });
+  }
+
+  private void assertAllReleased() {
+    for (DataBuffer dataBuffer : allocated) {
+      assertEquals(0, NettyDataBufferFactory.toByteBuf(dataBuffer).refCnt());
+    }
+  }
+}
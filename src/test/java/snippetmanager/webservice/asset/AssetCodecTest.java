@@ -0,0 +1,88 @@
+package snippetmanager.webservice.asset;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class AssetCodecTest {
+  private static final byte[] SNIPPET =
+      "let a: number = 1;\nprintln(a);\n".repeat(100).getBytes(StandardCharsets.UTF_8);
+
+  @Test
+  void gzipRoundTrip() throws IOException {
+    AssetCodec codec = new AssetCodec("gzip", 0, List.of("snippets"));
+
+    byte[] encoded = codec.encode(SNIPPET);
+
+    assertTrue(encoded.length < SNIPPET.length);
+    assertArrayEquals(SNIPPET, codec.decode(encoded));
+  }
+
+  @Test
+  void deflateRoundTrip() throws IOException {
+    AssetCodec codec = new AssetCodec("deflate", 0, List.of("snippets"));
+
+    byte[] encoded = codec.encode(SNIPPET);
+
+    assertTrue(encoded.length < SNIPPET.length);
+    assertArrayEquals(SNIPPET, codec.decode(encoded));
+  }
+
+  @Test
+  void unmarkedContentIsReadAsIs() throws IOException {
+    AssetCodec codec = new AssetCodec("gzip", 0, List.of("snippets"));
+
+    assertArrayEquals(SNIPPET, codec.decode(SNIPPET));
+    assertArrayEquals(new byte[] {'a'}, codec.decode(new byte[] {'a'}));
+  }
+
+  @Test
+  void assetsWrittenWithAnotherCodecAreStillRead() throws IOException {
+    byte[] encoded = new AssetCodec("deflate", 0, List.of("snippets")).encode(SNIPPET);
+
+    AssetCodec codec = new AssetCodec("none", 0, List.of("snippets"));
+
+    assertArrayEquals(SNIPPET, codec.decode(encoded));
+  }
+
+  @Test
+  void codecIdsAreStableAndUnknownOnesAreRejected() throws IOException {
+    byte[] encoded = new AssetCodec("deflate", 0, List.of("snippets")).encode(SNIPPET);
+    AssetCodec codec = new AssetCodec("none", 0, List.of("snippets"));
+
+    assertEquals(2, encoded[4]);
+    encoded[4] = 9;
+    assertThrows(IOException.class, () -> codec.decode(encoded));
+    encoded[4] = -1;
+    assertThrows(IOException.class, () -> codec.decode(encoded));
+  }
+
+  @Test
+  void incompressibleContentIsStoredRaw() throws IOException {
+    AssetCodec codec = new AssetCodec("gzip", 0, List.of("snippets"));
+    byte[] random = new byte[512];
+    new Random(42).nextBytes(random);
+    random[0] = 'x';
+
+    assertSame(random, codec.encode(random));
+  }
+
+  @Test
+  void onlyConfiguredContainersAboveTheThresholdAreEncoded() {
+    AssetCodec codec = new AssetCodec("gzip", 1024, List.of("snippets"));
+
+    assertTrue(codec.shouldEncode("snippets", 2048));
+    assertFalse(codec.shouldEncode("snippets", 100));
+    assertFalse(codec.shouldEncode("lint-rules", 2048));
+    assertFalse(new AssetCodec("none", 0, List.of("snippets")).shouldEncode("snippets", 2048));
+  }
+}
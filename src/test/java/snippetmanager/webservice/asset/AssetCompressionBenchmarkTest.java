@@ -0,0 +1,83 @@
+package snippetmanager.webservice.asset;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+// Run with ./gradlew benchmark
+@Tag("benchmark")
+class AssetCompressionBenchmarkTest {
+  private static final int WARMUP = 200;
+  private static final int ITERATIONS = 1000;
+  private static final int[] SNIPPET_SIZES = {1024, 16 * 1024, 256 * 1024};
+  private static final String[] CODECS = {"gzip", "deflate"};
+
+  @Test
+  void compressionCostAgainstBytesSaved() throws IOException {
+    System.out.println("codec   | size KB | stored KB | saved % | encode us | decode us");
+    for (String name : CODECS) {
+      AssetCodec codec = new AssetCodec(name, 0, List.of("snippets"));
+      for (int size : SNIPPET_SIZES) {
+        byte[] content = snippet(size);
+        byte[] encoded = codec.encode(content);
+        assertArrayEquals(content, codec.decode(encoded));
+        assertTrue(encoded.length < content.length);
+
+        double encodeMicros = timeEncode(codec, content);
+        double decodeMicros = timeDecode(codec, encoded);
+        double saved = 100.0 * (content.length - encoded.length) / content.length;
+        System.out.printf(
+            "%-7s | %7d | %9.1f | %7.1f | %9.1f | %9.1f%n",
+            name, size / 1024, encoded.length / 1024.0, saved, encodeMicros, decodeMicros);
+      }
+    }
+  }
+
+  private double timeEncode(AssetCodec codec, byte[] content) throws IOException {
+    for (int i = 0; i < WARMUP; i++) {
+      codec.encode(content);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      codec.encode(content);
+    }
+    return (System.nanoTime() - start) / 1000.0 / ITERATIONS;
+  }
+
+  private double timeDecode(AssetCodec codec, byte[] encoded) throws IOException {
+    for (int i = 0; i < WARMUP; i++) {
+      codec.decode(encoded);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      codec.decode(encoded);
+    }
+    return (System.nanoTime() - start) / 1000.0 / ITERATIONS;
+  }
+
+  // Printscript-like source with some variety, so the ratio is not flattered by pure repetition
+  private byte[] snippet(int size) {
+    StringBuilder builder = new StringBuilder(size);
+    int line = 0;
+    while (builder.length() < size) {
+      builder
+          .append("let value")
+          .append(line)
+          .append(": number = ")
+          .append(line * 31 % 997)
+          .append(";\nprintln(\"value ")
+          .append(line)
+          .append(" is \" + value")
+          .append(line)
+          .append(");\n");
+      line++;
+    }
+    builder.setLength(size);
+    return builder.toString().getBytes(StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,199 @@
+package snippetmanager.webservice.asset;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AssetDiskCacheTest {
+  private static final int SEGMENT_SIZE = 4096;
+
+  @TempDir Path directory;
+
+  private AssetDiskCache diskCache;
+
+  @AfterEach
+  void tearDown() {
+    if (diskCache != null) {
+      diskCache.destroy();
+    }
+  }
+
+  @Test
+  void putAndGet() {
+    diskCache = open();
+
+    diskCache.put("snippets/a", bytes("let a: number = 1;"));
+    diskCache.put("snippets/b", bytes("println(a);"));
+
+    assertArrayEquals(bytes("let a: number = 1;"), content("snippets/a"));
+    assertArrayEquals(bytes("println(a);"), content("snippets/b"));
+    assertNull(content("snippets/c"));
+  }
+
+  @Test
+  void indexIsRebuiltAfterRestart() {
+    diskCache = open();
+    diskCache.put("snippets/a", bytes("first"));
+    diskCache.put("snippets/a", bytes("second"));
+    diskCache.put("snippets/b", bytes("deleted"));
+    diskCache.invalidate("snippets/b");
+    diskCache.destroy();
+
+    diskCache = open();
+
+    assertArrayEquals(bytes("second"), content("snippets/a"));
+    assertNull(content("snippets/b"));
+  }
+
+  @Test
+  void putIfAbsentKeepsNewerContent() {
+    diskCache = open();
+
+    diskCache.put("snippets/a", bytes("written"));
+    diskCache.putIfAbsent("snippets/a", bytes("downloaded"));
+
+    assertArrayEquals(bytes("written"), content("snippets/a"));
+  }
+
+  @Test
+  void writeThatIsNoLongerCurrentLeavesAMiss() {
+    diskCache = open();
+
+    diskCache.put("snippets/a", bytes("old"));
+    diskCache.put("snippets/a", bytes("overtaken"), () -> false);
+    diskCache.putIfAbsent("snippets/b", bytes("overtaken"), () -> false);
+
+    assertNull(content("snippets/a"));
+    assertNull(content("snippets/b"));
+  }
+
+  @Test
+  void corruptRecordsAreMissesAndCanBeReplaced() throws IOException {
+    diskCache = open();
+    diskCache.put("snippets/a", bytes("let a: number = 1;"));
+    // First byte of the value of the first record, after the 21-byte header and the key
+    try (FileChannel channel = FileChannel.open(segmentFile(), StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.wrap(bytes("X")), 21 + "snippets/a".length());
+    }
+
+    assertNull(content("snippets/a"));
+    diskCache.putIfAbsent("snippets/a", bytes("let a: number = 1;"));
+    assertArrayEquals(bytes("let a: number = 1;"), content("snippets/a"));
+  }
+
+  @Test
+  void compactionReclaimsOverwrittenRecords() throws IOException {
+    diskCache = open();
+    byte[] content = new byte[1000];
+    for (int i = 0; i < 12; i++) {
+      diskCache.put("snippets/a", content);
+    }
+    diskCache.put("snippets/b", bytes("live"));
+    long segmentsBefore = countSegments();
+
+    diskCache.compact();
+
+    assertTrue(countSegments() < segmentsBefore);
+    assertArrayEquals(content, content("snippets/a"));
+    assertArrayEquals(bytes("live"), content("snippets/b"));
+  }
+
+  @Test
+  void compactionThatRollsTheLogKeepsTheSegmentItIsCopying() {
+    diskCache = open();
+    byte[] content = new byte[1000];
+    // Three records fill a segment: the first holds live records, the next three only garbage
+    // and the last live copy of snippets/g, so copying the first one rolls past max-segments
+    for (int i = 0; i < 3; i++) {
+      diskCache.put("snippets/" + i, content);
+    }
+    for (int i = 0; i < 9; i++) {
+      diskCache.put("snippets/g", content);
+    }
+
+    diskCache.compact();
+
+    for (int i = 0; i < 3; i++) {
+      assertArrayEquals(content, content("snippets/" + i));
+    }
+    assertArrayEquals(content, content("snippets/g"));
+  }
+
+  @Test
+  void oldestSegmentIsDroppedWhenFull() {
+    diskCache = open();
+    byte[] content = new byte[1000];
+    for (int i = 0; i < 20; i++) {
+      diskCache.put("snippets/" + i, content);
+    }
+
+    assertNull(content("snippets/0"));
+    assertArrayEquals(content, content("snippets/19"));
+  }
+
+  @Test
+  void expiredRecordsAreMissesAlsoAfterRestart() throws InterruptedException {
+    diskCache = open(Duration.ofMillis(200));
+    diskCache.put("snippets/a", bytes("stale"));
+    AssetDiskCache.Entry entry = diskCache.get("snippets/a");
+    assertArrayEquals(bytes("stale"), entry.content());
+    assertTrue(entry.expiresAtMillis() <= System.currentTimeMillis() + 200);
+    diskCache.destroy();
+
+    Thread.sleep(300);
+    diskCache = open(Duration.ofMillis(200));
+
+    assertNull(content("snippets/a"));
+  }
+
+  private AssetDiskCache open() {
+    return open(Duration.ofHours(1));
+  }
+
+  private AssetDiskCache open(Duration expireAfterWrite) {
+    return new AssetDiskCache(
+        new SimpleMeterRegistry(),
+        true,
+        directory.toString(),
+        SEGMENT_SIZE,
+        4,
+        Duration.ofHours(1),
+        0.5,
+        expireAfterWrite);
+  }
+
+  private byte[] content(String key) {
+    AssetDiskCache.Entry entry = diskCache.get(key);
+    return entry == null ? null : entry.content();
+  }
+
+  private Path segmentFile() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.sorted().findFirst().orElseThrow();
+    }
+  }
+
+  private long countSegments() throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.count();
+    }
+  }
+
+  private byte[] bytes(String content) {
+    return content.getBytes(StandardCharsets.UTF_8);
+  }
+}
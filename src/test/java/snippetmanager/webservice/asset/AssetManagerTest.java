@@ -0,0 +1,187 @@
+package snippetmanager.webservice.asset;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import snippetmanager.webservice.WebClientUtility;
+
+public class AssetManagerTest {
+  private static final String URL = "http://assets/v1/asset/snippets/";
+
+  private WebClientUtility webClientUtility;
+
+  private AssetManager assetManager;
+
+  @BeforeEach
+  void setUp() {
+    webClientUtility = mock(WebClientUtility.class);
+    assetManager = new AssetManager();
+    assetManager.webClientUtility = webClientUtility;
+    SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    AssetDiskCache diskCache =
+        new AssetDiskCache(
+            meterRegistry,
+            false,
+            "unused",
+            1024,
+            2,
+            Duration.ofMinutes(5),
+            0.5,
+            Duration.ofHours(1));
+    assetManager.assetCache =
+        new AssetCache(meterRegistry, diskCache, 1024 * 1024, Duration.ofMinutes(5));
+    ReflectionTestUtils.setField(assetManager, "assetManagerUrl", "http://assets");
+    ReflectionTestUtils.setField(assetManager, "uploadChunkSize", 4);
+    assetManager.assetCodec = new AssetCodec("none", 1024, List.of("snippets"));
+  }
+
+  @Test
+  void getAssetIsServedFromCache() throws IOException {
+    when(webClientUtility.getInputStream(URL + "a"))
+        .thenAnswer(invocation -> stream("let a: number = 1;"));
+
+    assertArrayEquals(bytes("let a: number = 1;"), read(assetManager.getAsset("snippets", "a")));
+    assertArrayEquals(bytes("let a: number = 1;"), read(assetManager.getAsset("snippets", "a")));
+
+    verify(webClientUtility, times(1)).getInputStream(URL + "a");
+  }
+
+  @Test
+  void createAssetWritesThrough() throws IOException {
+    when(webClientUtility.putFlux(any(), eq(URL + "a"), eq(String.class)))
+        .thenReturn(Mono.just(ResponseEntity.ok("created")));
+
+    assetManager.createAsset(
+        "snippets", "a", new MockMultipartFile("a", bytes("println(\"new\");")));
+
+    assertArrayEquals(bytes("println(\"new\");"), read(assetManager.getAsset("snippets", "a")));
+    verify(webClientUtility, times(0)).getInputStream(anyString());
+  }
+
+  @Test
+  void deleteAssetInvalidates() throws IOException {
+    when(webClientUtility.getInputStream(URL + "a"))
+        .thenAnswer(invocation -> stream("let a: number = 1;"));
+    when(webClientUtility.deleteAsync(URL + "a", String.class))
+        .thenReturn(Mono.just(ResponseEntity.ok("deleted")));
+
+    read(assetManager.getAsset("snippets", "a"));
+    assetManager.deleteAsset("snippets", "a");
+    read(assetManager.getAsset("snippets", "a"));
+
+    verify(webClientUtility, times(2)).getInputStream(URL + "a");
+  }
+
+  @Test
+  void downloadOverlappingADeleteIsNotCached() throws IOException {
+    when(webClientUtility.deleteAsync(URL + "a", String.class))
+        .thenReturn(Mono.just(ResponseEntity.ok("deleted")));
+    when(webClientUtility.getInputStream(URL + "a"))
+        .thenAnswer(
+            invocation -> {
+              // The asset is deleted while its old content is still being downloaded
+              assetManager.deleteAsset("snippets", "a");
+              return stream("let a: number = 1;");
+            })
+        .thenAnswer(invocation -> stream("let a: number = 2;"));
+
+    read(assetManager.getAsset("snippets", "a"));
+
+    assertArrayEquals(bytes("let a: number = 2;"), read(assetManager.getAsset("snippets", "a")));
+    verify(webClientUtility, times(2)).getInputStream(URL + "a");
+  }
+
+  @Test
+  void writeAssetStreamsContent() throws IOException {
+    when(webClientUtility.getInputStream(URL + "a"))
+        .thenAnswer(invocation -> stream("let a: number = 1;"));
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    assetManager.writeAsset("snippets", "a", outputStream);
+
+    assertArrayEquals(bytes("let a: number = 1;"), outputStream.toByteArray());
+  }
+
+  @Test
+  void compressedAssetsAreInflated() throws IOException {
+    byte[] content = bytes("println(1);".repeat(50));
+    byte[] stored = new AssetCodec("gzip", 0, List.of("snippets")).encode(content);
+    when(webClientUtility.getInputStream(URL + "a"))
+        .thenAnswer(invocation -> new ByteArrayInputStream(stored));
+    when(webClientUtility.getInputStream(URL + "b"))
+        .thenAnswer(invocation -> new ByteArrayInputStream(stored));
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    assetManager.writeAsset("snippets", "b", outputStream);
+
+    assertArrayEquals(content, read(assetManager.getAsset("snippets", "a")));
+    assertArrayEquals(content, outputStream.toByteArray());
+  }
+
+  @Test
+  void writeAssetUsesCachedCopy() throws IOException {
+    when(webClientUtility.getInputStream(URL + "a"))
+        .thenAnswer(invocation -> stream("let a: number = 1;"));
+    read(assetManager.getAsset("snippets", "a"));
+
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    assetManager.writeAsset("snippets", "a", outputStream);
+
+    assertArrayEquals(bytes("let a: number = 1;"), outputStream.toByteArray());
+    verify(webClientUtility, times(1)).getInputStream(URL + "a");
+  }
+
+  @Test
+  void uploadIsSplitIntoChunks() throws IOException {
+    MockMultipartFile file = new MockMultipartFile("a", bytes("println(\"new\");"));
+
+    ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+    List<DataBuffer> chunks = assetManager.convertMultipartFileToFlux(file).collectList().block();
+    for (DataBuffer chunk : chunks) {
+      assertTrue(chunk.readableByteCount() <= 4);
+      byte[] content = new byte[chunk.readableByteCount()];
+      chunk.read(content);
+      uploaded.write(content);
+      DataBufferUtils.release(chunk);
+    }
+
+    assertEquals(4, chunks.size());
+    assertArrayEquals(bytes("println(\"new\");"), uploaded.toByteArray());
+  }
+
+  private InputStream stream(String content) {
+    return new ByteArrayInputStream(bytes(content));
+  }
+
+  private byte[] bytes(String content) {
+    return content.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private byte[] read(InputStream inputStream) throws IOException {
+    return inputStream.readAllBytes();
+  }
+}
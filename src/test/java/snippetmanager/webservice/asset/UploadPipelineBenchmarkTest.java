@@ -0,0 +1,116 @@
+package snippetmanager.webservice.asset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+
+// Run with ./gradlew benchmark
+@Tag("benchmark")
+class UploadPipelineBenchmarkTest {
+  private static final int SNIPPET_SIZE = 1024 * 1024;
+  private static final int WARMUP = 20;
+  private static final int ITERATIONS = 100;
+  private static final int[] CHUNK_SIZES = {4 * 1024, 16 * 1024, 64 * 1024};
+
+  private final com.sun.management.ThreadMXBean threadBean =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  @Test
+  void uploadThroughputAndAllocation() {
+    MultipartFile file = new MockMultipartFile("snippet", new byte[SNIPPET_SIZE]);
+
+    System.out.println("pipeline       | chunks | MB/s    | KB allocated per upload");
+    Result baseline = measure("1 KB unpooled", file, UploadPipelineBenchmarkTest::previousFlux);
+    Result best = baseline;
+    for (int chunkSize : CHUNK_SIZES) {
+      AssetManager assetManager = new AssetManager();
+      ReflectionTestUtils.setField(assetManager, "uploadChunkSize", chunkSize);
+      String name = (chunkSize / 1024) + " KB pooled";
+      best = measure(name, file, assetManager::convertMultipartFileToFlux);
+    }
+
+    assertTrue(best.chunks() < baseline.chunks());
+    assertTrue(best.allocatedBytes() < baseline.allocatedBytes());
+  }
+
+  private Result measure(
+      String name, MultipartFile file, Function<MultipartFile, Flux<DataBuffer>> pipeline) {
+    for (int i = 0; i < WARMUP; i++) {
+      drain(pipeline.apply(file));
+    }
+
+    long threadId = Thread.currentThread().getId();
+    long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+    long start = System.nanoTime();
+    long chunks = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+      chunks = drain(pipeline.apply(file));
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocated = (threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore) / ITERATIONS;
+
+    double megabytesPerSecond = (double) SNIPPET_SIZE * ITERATIONS / (1 << 20) / (elapsed / 1e9);
+    System.out.printf(
+        "%-14s | %6d | %7.1f | %d%n", name, chunks, megabytesPerSecond, allocated / 1024);
+    return new Result(chunks, allocated);
+  }
+
+  // Consumes the flux the way the HTTP client does: read every byte and release the buffer
+  private long drain(Flux<DataBuffer> flux) {
+    AtomicLong bytes = new AtomicLong();
+    Long chunks =
+        flux.doOnNext(
+                dataBuffer -> {
+                  bytes.addAndGet(dataBuffer.readableByteCount());
+                  DataBufferUtils.release(dataBuffer);
+                })
+            .count()
+            .block();
+    assertEquals(SNIPPET_SIZE, bytes.get());
+    return chunks;
+  }
+
+  // The upload path before it was moved to pooled buffers, kept here as the baseline
+  private static Flux<DataBuffer> previousFlux(MultipartFile multipartFile) {
+    try {
+      InputStream inputStream = multipartFile.getInputStream();
+      return Flux.generate(
+          sink -> {
+            try {
+              ByteBuffer byteBuffer = ByteBuffer.allocate(1024);
+              int readBytes = Channels.newChannel(inputStream).read(byteBuffer);
+
+              if (readBytes == -1) {
+                sink.complete();
+              } else {
+                byteBuffer.flip();
+                DataBuffer dataBuffer = new DefaultDataBufferFactory().wrap(byteBuffer);
+                sink.next(dataBuffer);
+              }
+            } catch (IOException e) {
+              sink.error(e);
+            }
+          });
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private record Result(long chunks, long allocatedBytes) {}
+}
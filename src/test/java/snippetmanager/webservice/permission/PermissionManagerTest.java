@@ -0,0 +1,143 @@
+package snippetmanager.webservice.permission;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import snippetmanager.model.dtos.webservice.PermissionDto;
+import snippetmanager.webservice.WebClientUtility;
+
+public class PermissionManagerTest {
+
+  private WebClientUtility webClientUtility;
+
+  private PermissionManager permissionManager;
+
+  @BeforeEach
+  void setUp() {
+    webClientUtility = mock(WebClientUtility.class);
+    permissionManager = new PermissionManager();
+    permissionManager.webClientUtility = webClientUtility;
+    permissionManager.permissionCache =
+        new PermissionCache(
+            new SimpleMeterRegistry(), 100, Duration.ofMinutes(1), Duration.ofMinutes(1));
+    ReflectionTestUtils.setField(permissionManager, "permissionManagerUrl", "http://permissions");
+
+    SecurityContext securityContext = mock(SecurityContext.class);
+    Authentication authentication = mock(Authentication.class);
+    Jwt jwt = mock(Jwt.class);
+
+    when(securityContext.getAuthentication()).thenReturn(authentication);
+    when(authentication.getPrincipal()).thenReturn(jwt);
+    when(jwt.getClaimAsString("sub")).thenReturn("auth0|1");
+
+    SecurityContextHolder.setContext(securityContext);
+  }
+
+  @Test
+  void decisionsAreCached() {
+    when(webClientUtility.postAsync(anyString(), any(PermissionDto.class), eq(Boolean.class)))
+        .thenReturn(Mono.just(ResponseEntity.ok(true)));
+
+    assertTrue(permissionManager.canRead("snippet"));
+    assertTrue(permissionManager.canRead("snippet"));
+
+    verify(webClientUtility, times(1))
+        .postAsync(anyString(), any(PermissionDto.class), eq(Boolean.class));
+  }
+
+  @Test
+  void denialsAreCached() {
+    when(webClientUtility.postAsync(anyString(), any(PermissionDto.class), eq(Boolean.class)))
+        .thenReturn(Mono.just(ResponseEntity.ok(false)));
+
+    assertFalse(permissionManager.canWrite("snippet"));
+    assertFalse(permissionManager.canWrite("snippet"));
+
+    verify(webClientUtility, times(1))
+        .postAsync(anyString(), any(PermissionDto.class), eq(Boolean.class));
+  }
+
+  @Test
+  void deletePermissionInvalidatesTheSnippet() {
+    when(webClientUtility.postAsync(anyString(), any(PermissionDto.class), eq(Boolean.class)))
+        .thenReturn(Mono.just(ResponseEntity.ok(true)));
+    when(webClientUtility.deleteAsync(anyString(), eq(String.class)))
+        .thenReturn(Mono.just(ResponseEntity.ok("deleted")));
+
+    permissionManager.canRead("snippet");
+    permissionManager.deletePermission("snippet");
+    permissionManager.canRead("snippet");
+
+    verify(webClientUtility, times(2))
+        .postAsync(anyString(), any(PermissionDto.class), eq(Boolean.class));
+  }
+
+  @Test
+  void checkInFlightDuringARevokeIsNotCached() {
+    Sinks.One<ResponseEntity<Boolean>> inFlight = Sinks.one();
+    when(webClientUtility.postAsync(anyString(), any(PermissionDto.class), eq(Boolean.class)))
+        .thenReturn(inFlight.asMono(), Mono.just(ResponseEntity.ok(false)));
+    when(webClientUtility.deleteAsync(anyString(), eq(String.class)))
+        .thenReturn(Mono.just(ResponseEntity.ok("deleted")));
+
+    Mono<Boolean> check = permissionManager.canReadAsync("snippet");
+    permissionManager.deletePermission("snippet");
+    // The answer was given before the revoke but arrives after it
+    inFlight.tryEmitValue(ResponseEntity.ok(true));
+
+    assertTrue(check.block());
+    assertFalse(permissionManager.canRead("snippet"));
+    verify(webClientUtility, times(2))
+        .postAsync(anyString(), any(PermissionDto.class), eq(Boolean.class));
+  }
+
+  @Test
+  void invalidateOnlyDropsTheDecisionsOfThatSnippet() {
+    when(webClientUtility.postAsync(anyString(), any(PermissionDto.class), eq(Boolean.class)))
+        .thenReturn(Mono.just(ResponseEntity.ok(true)));
+    when(webClientUtility.deleteAsync(anyString(), eq(String.class)))
+        .thenReturn(Mono.just(ResponseEntity.ok("deleted")));
+
+    permissionManager.canRead("snippet");
+    permissionManager.canWrite("snippet");
+    permissionManager.canRead("other");
+    permissionManager.deletePermission("snippet");
+    permissionManager.canRead("snippet");
+    permissionManager.canWrite("snippet");
+    permissionManager.canRead("other");
+
+    verify(webClientUtility, times(5))
+        .postAsync(anyString(), any(PermissionDto.class), eq(Boolean.class));
+  }
+
+  @Test
+  void asyncChecksShareTheCache() {
+    when(webClientUtility.postAsync(anyString(), any(PermissionDto.class), eq(Boolean.class)))
+        .thenReturn(Mono.just(ResponseEntity.ok(true)));
+
+    assertTrue(permissionManager.canReadAsync("snippet").block());
+    assertTrue(permissionManager.canRead("snippet"));
+
+    verify(webClientUtility, times(1))
+        .postAsync(anyString(), any(PermissionDto.class), eq(Boolean.class));
+  }
+}
@@ -0,0 +1,182 @@
+package snippetmanager.webservice.printscript;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ClientCodecConfigurer;
+import org.springframework.http.codec.multipart.MultipartHttpMessageWriter;
+import org.springframework.mock.http.client.reactive.MockClientHttpRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import reactor.core.publisher.Mono;
+import snippetmanager.util.ContentDigest;
+import snippetmanager.util.enums.CodeLanguage;
+import snippetmanager.webservice.WebClientUtility;
+
+// Run with ./gradlew benchmark
+// Bytes allocated per compile and test call for a 1 MB snippet, including writing the multipart
+// body, against the previous bodies that joined the content into a String and copied it again.
+@Tag("benchmark")
+class PrintscriptBodyBenchmarkTest {
+  private static final int SNIPPET_SIZE = 1024 * 1024;
+  private static final int WARMUP = 20;
+  private static final int ITERATIONS = 100;
+
+  private final com.sun.management.ThreadMXBean threadBean =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private final MultipartHttpMessageWriter multipartWriter =
+      new MultipartHttpMessageWriter(ClientCodecConfigurer.create().getWriters());
+
+  @Test
+  void heapPerCall() {
+    byte[] snippet = snippet();
+    String digest = ContentDigest.sha256(snippet);
+    PrintscriptManager printscriptManager = createManager();
+
+    System.out.println("call            | KB allocated per call");
+    long previousCompile =
+        measure(
+            "compile, copy",
+            () -> {
+              // The String the service used to build first, then the getBytes copy of it
+              String code = new String(snippet, StandardCharsets.UTF_8);
+              send(previousBody("code", new ByteArrayResource(code.getBytes())));
+            });
+    long streamedCompile =
+        measure(
+            "compile, stream",
+            // A new digest on every call, so the compile cache never answers
+            () ->
+                printscriptManager.compile(
+                    digest + System.nanoTime(),
+                    () -> new ByteArrayInputStream(snippet),
+                    CodeLanguage.PRINTSCRIPT,
+                    "1.1"));
+    long previousTest =
+        measure(
+            "test, joined",
+            () -> send(previousBody("content", joinLines(new ByteArrayInputStream(snippet)))));
+    long streamedTest =
+        measure(
+            "test, stream",
+            () ->
+                printscriptManager.test(
+                    () -> new ByteArrayInputStream(snippet),
+                    "PRINTSCRIPT",
+                    "1.1",
+                    List.of(),
+                    List.of()));
+
+    assertTrue(streamedCompile < previousCompile);
+    assertTrue(streamedTest < previousTest);
+  }
+
+  private long measure(String name, Runnable call) {
+    for (int i = 0; i < WARMUP; i++) {
+      call.run();
+    }
+
+    long threadId = Thread.currentThread().getId();
+    long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < ITERATIONS; i++) {
+      call.run();
+    }
+    long allocated = (threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore) / ITERATIONS;
+
+    System.out.printf("%-15s | %d%n", name, allocated / 1024);
+    return allocated;
+  }
+
+  // Writes the body the way the WebClient does and releases every buffer, on the calling thread
+  private Mono<ResponseEntity<String>> send(Object body) {
+    MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.POST, "/");
+    request.setWriteHandler(chunks -> chunks.doOnNext(DataBufferUtils::release).then());
+    multipartWriter
+        .write(
+            Mono.just(body),
+            ResolvableType.forClass(MultiValueMap.class),
+            MediaType.MULTIPART_FORM_DATA,
+            request,
+            Map.of())
+        .block();
+    return Mono.just(ResponseEntity.ok("ok"));
+  }
+
+  private PrintscriptManager createManager() {
+    WebClientUtility webClientUtility = mock(WebClientUtility.class);
+    when(webClientUtility.postAsync(anyString(), any(), eq(String.class)))
+        .thenAnswer(invocation -> send(invocation.getArgument(1)));
+
+    PrintscriptManager printscriptManager = new PrintscriptManager();
+    printscriptManager.webClientUtility = webClientUtility;
+    // Never checked, so the version stays unknown and every compile reaches the service
+    printscriptManager.printscriptVersion =
+        new PrintscriptVersion(
+            webClientUtility,
+            new SimpleMeterRegistry(),
+            "http://printscript",
+            "/api/version",
+            Duration.ofMinutes(1));
+    printscriptManager.compileCache =
+        new CompileCache(new SimpleMeterRegistry(), 1024, Duration.ofMinutes(5));
+    printscriptManager.testResultCache =
+        new TestResultCache(new SimpleMeterRegistry(), 1024, Duration.ofMinutes(5));
+    ReflectionTestUtils.setField(printscriptManager, "printscriptServiceUrl", "http://printscript");
+    ReflectionTestUtils.setField(printscriptManager, "uploadChunkSize", 65536);
+    return printscriptManager;
+  }
+
+  // The multipart bodies before the content part was streamed, kept here as the baseline
+  private MultiValueMap<String, Object> previousBody(String contentName, Object content) {
+    MultiValueMap<String, Object> body = new LinkedMultiValueMap<>();
+    body.add(contentName, content);
+    body.add("language", "PRINTSCRIPT");
+    body.add("version", "1.1");
+    return body;
+  }
+
+  private String joinLines(InputStream inputStream) {
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+      return reader.lines().collect(Collectors.joining("\n"));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  // 1 MB of short statements, so the line splitting of the old test body is exercised
+  private byte[] snippet() {
+    byte[] line = "println(\"hello\");\n".getBytes(StandardCharsets.UTF_8);
+    byte[] snippet = new byte[SNIPPET_SIZE];
+    for (int offset = 0; offset < SNIPPET_SIZE; offset += line.length) {
+      System.arraycopy(line, 0, snippet, offset, Math.min(line.length, SNIPPET_SIZE - offset));
+    }
+    return snippet;
+  }
+}
@@ -0,0 +1,358 @@
+package snippetmanager.webservice.printscript;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import snippetmanager.model.dtos.TestResultDto;
+import snippetmanager.util.ContentDigest;
+import snippetmanager.util.enums.CodeLanguage;
+import snippetmanager.webservice.BulkheadFullException;
+import snippetmanager.webservice.WebClientUtility;
+
+public class PrintscriptManagerTest {
+  private static final String URL = "http://printscript/api/compile";
+
+  private static final String VERSION_URL = "http://printscript/api/version";
+
+  private WebClientUtility webClientUtility;
+
+  private SimpleMeterRegistry meterRegistry;
+
+  private PrintscriptVersion printscriptVersion;
+
+  private PrintscriptManager printscriptManager;
+
+  @BeforeEach
+  void setUp() {
+    webClientUtility = mock(WebClientUtility.class);
+    meterRegistry = new SimpleMeterRegistry();
+    printscriptVersion =
+        new PrintscriptVersion(
+            webClientUtility,
+            meterRegistry,
+            "http://printscript",
+            "/api/version",
+            Duration.ofMinutes(1));
+    printscriptManager = new PrintscriptManager();
+    printscriptManager.webClientUtility = webClientUtility;
+    printscriptManager.printscriptVersion = printscriptVersion;
+    printscriptManager.compileCache =
+        new CompileCache(new SimpleMeterRegistry(), 1024 * 1024, Duration.ofMinutes(5));
+    printscriptManager.testResultCache =
+        new TestResultCache(new SimpleMeterRegistry(), 1024 * 1024, Duration.ofMinutes(5));
+    ReflectionTestUtils.setField(printscriptManager, "printscriptServiceUrl", "http://printscript");
+    ReflectionTestUtils.setField(printscriptManager, "uploadChunkSize", 16);
+    serviceVersion("1.0");
+  }
+
+  @Test
+  void successfulCompilesAreCached() {
+    when(webClientUtility.postAsync(eq(URL), any(), eq(String.class)))
+        .thenReturn(Mono.just(ResponseEntity.ok("compiled")));
+
+    compile("let a: number = 1;");
+    ResponseEntity<String> response = compile("let a: number = 1;");
+
+    assertEquals("compiled", response.getBody());
+    verify(webClientUtility, times(1)).postAsync(eq(URL), any(), eq(String.class));
+  }
+
+  @Test
+  void compileErrorsAreCached() {
+    when(webClientUtility.postAsync(eq(URL), any(), eq(String.class)))
+        .thenReturn(
+            Mono.error(serverError(HttpStatus.INTERNAL_SERVER_ERROR, "Unexpected token ;")));
+
+    RuntimeException first = assertThrows(RuntimeException.class, () -> compile("let a = ;"));
+    RuntimeException second = assertThrows(RuntimeException.class, () -> compile("let a = ;"));
+
+    assertEquals("Unexpected token ;", first.getMessage());
+    assertEquals(first.getMessage(), second.getMessage());
+    verify(webClientUtility, times(1)).postAsync(eq(URL), any(), eq(String.class));
+  }
+
+  @Test
+  void otherErrorsAreNotCached() {
+    when(webClientUtility.postAsync(eq(URL), any(), eq(String.class)))
+        .thenReturn(Mono.error(serverError(HttpStatus.SERVICE_UNAVAILABLE, "Unavailable")));
+
+    assertThrows(RuntimeException.class, () -> compile("let a: number = 1;"));
+    assertThrows(RuntimeException.class, () -> compile("let a: number = 1;"));
+
+    verify(webClientUtility, times(2)).postAsync(eq(URL), any(), eq(String.class));
+  }
+
+  @Test
+  void serverErrorsWithoutAMessageAreNotCached() {
+    when(webClientUtility.postAsync(eq(URL), any(), eq(String.class)))
+        .thenReturn(Mono.error(serverError(HttpStatus.INTERNAL_SERVER_ERROR, "")));
+
+    assertThrows(RuntimeException.class, () -> compile("let a: number = 1;"));
+    assertThrows(RuntimeException.class, () -> compile("let a: number = 1;"));
+
+    verify(webClientUtility, times(2)).postAsync(eq(URL), any(), eq(String.class));
+  }
+
+  @Test
+  void fullBulkheadIsNotWrappedAsAnUnexpectedError() {
+    when(webClientUtility.postAsync(eq(URL), any(), eq(String.class)))
+        .thenReturn(Mono.error(new BulkheadFullException("printscript")));
+
+    assertThrows(BulkheadFullException.class, () -> compile("println(1);"));
+  }
+
+  @Test
+  void languageVersionIsPartOfTheKey() {
+    when(webClientUtility.postAsync(eq(URL), any(), eq(String.class)))
+        .thenReturn(Mono.just(ResponseEntity.ok("compiled")));
+
+    printscriptManager.compile(
+        ContentDigest.sha256("println(1);"),
+        () -> stream("println(1);"),
+        CodeLanguage.PRINTSCRIPT,
+        "1.0");
+    compile("println(1);");
+
+    verify(webClientUtility, times(2)).postAsync(eq(URL), any(), eq(String.class));
+  }
+
+  @Test
+  void newServiceVersionDropsTheCache() {
+    when(webClientUtility.postAsync(eq(URL), any(), eq(String.class)))
+        .thenReturn(Mono.just(ResponseEntity.ok("compiled")));
+
+    compile("println(1);");
+    serviceVersion("2.0");
+    compile("println(1);");
+    compile("println(1);");
+
+    verify(webClientUtility, times(2)).postAsync(eq(URL), any(), eq(String.class));
+  }
+
+  @Test
+  void unknownServiceVersionBypassesTheCache() {
+    printscriptManager.printscriptVersion =
+        new PrintscriptVersion(
+            webClientUtility,
+            meterRegistry,
+            "http://printscript",
+            "/api/version",
+            Duration.ofMinutes(1));
+    doReturn(Mono.error(new IllegalStateException("connection refused")))
+        .when(webClientUtility)
+        .getAsync(eq(VERSION_URL), any());
+    printscriptManager.printscriptVersion.check();
+    when(webClientUtility.postAsync(eq(URL), any(), eq(String.class)))
+        .thenReturn(Mono.just(ResponseEntity.ok("compiled")));
+
+    compile("println(1);");
+    compile("println(1);");
+
+    verify(webClientUtility, times(2)).postAsync(eq(URL), any(), eq(String.class));
+    assertEquals(
+        1.0, meterRegistry.counter("printscript.version.checks", "outcome", "failed").count());
+  }
+
+  @Test
+  void compileAsyncSharesTheCache() {
+    when(webClientUtility.postAsync(anyString(), any(), eq(String.class)))
+        .thenReturn(Mono.just(ResponseEntity.ok("compiled")));
+
+    printscriptManager
+        .compileAsync(
+            ContentDigest.sha256("println(1);"),
+            () -> stream("println(1);"),
+            CodeLanguage.PRINTSCRIPT,
+            "1.1")
+        .block();
+    compile("println(1);");
+
+    verify(webClientUtility, times(1)).postAsync(eq(URL), any(), eq(String.class));
+  }
+
+  @Test
+  void testRunsAreMemoizedWithoutReadingTheContent() {
+    when(webClientUtility.postAsync(eq("http://printscript/api/test"), any(), eq(String.class)))
+        .thenAnswer(
+            invocation -> {
+              readPart(invocation.getArgument(1), "content");
+              return Mono.just(ResponseEntity.ok("passed"));
+            });
+    AtomicInteger reads = new AtomicInteger();
+    Supplier<InputStream> content =
+        () -> {
+          reads.incrementAndGet();
+          return stream("println(1);");
+        };
+
+    TestResultDto first =
+        printscriptManager.test("digest", content, "PRINTSCRIPT", "1.1", List.of(), List.of("1"));
+    TestResultDto second =
+        printscriptManager.test("digest", content, "PRINTSCRIPT", "1.1", List.of(), List.of("1"));
+    TestResultDto otherOutputs =
+        printscriptManager.test("digest", content, "PRINTSCRIPT", "1.1", List.of(), List.of("2"));
+
+    assertFalse(first.isCached());
+    assertTrue(second.isCached());
+    assertEquals("passed", second.getResult());
+    assertFalse(otherOutputs.isCached());
+    assertEquals(2, reads.get());
+  }
+
+  @Test
+  void nullTestValuesAreRejectedBeforeTheServiceIsCalled() {
+    List<String> outputs = new ArrayList<>();
+    outputs.add(null);
+
+    assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            printscriptManager.test(
+                "digest", () -> stream("println(1);"), "PRINTSCRIPT", "1.1", null, outputs));
+    verify(webClientUtility, times(0)).postAsync(anyString(), any(), eq(String.class));
+  }
+
+  @Test
+  void contentIsStreamedAsTextWithItsLineEndings() {
+    String code = "let a: number = 1;\r\nprintln(a);\n";
+    List<Object> bodies = new ArrayList<>();
+    when(webClientUtility.postAsync(anyString(), any(), eq(String.class)))
+        .thenAnswer(
+            invocation -> {
+              bodies.add(invocation.getArgument(1));
+              return Mono.just(ResponseEntity.ok("passed"));
+            });
+
+    compile(code);
+    printscriptManager.test(
+        ContentDigest.sha256(code), () -> stream(code), "PRINTSCRIPT", "1.1", List.of(), List.of());
+
+    assertEquals(code, readPart(bodies.get(0), "code"));
+    assertEquals(code, readPart(bodies.get(1), "content"));
+    assertEquals(
+        MediaType.parseMediaType("text/plain;charset=UTF-8"),
+        part(bodies.get(1), "content").getHeaders().getContentType());
+  }
+
+  @Test
+  void assetMissIsDownloadedOffTheEventLoopWithTheCallersContext() throws Exception {
+    List<Object> bodies = new ArrayList<>();
+    when(webClientUtility.postAsync(anyString(), any(), eq(String.class)))
+        .thenAnswer(
+            invocation -> {
+              bodies.add(invocation.getArgument(1));
+              return Mono.just(ResponseEntity.ok("passed"));
+            });
+    // Stands in for () -> getAsset(assetId) missing the asset cache: a blocking, authenticated call
+    AtomicReference<String> downloadThread = new AtomicReference<>();
+    AtomicReference<Authentication> downloadAuthentication = new AtomicReference<>();
+    Supplier<InputStream> assetDownload =
+        () -> {
+          downloadThread.set(Thread.currentThread().getName());
+          downloadAuthentication.set(SecurityContextHolder.getContext().getAuthentication());
+          return stream("println(1);");
+        };
+    Authentication caller = new TestingAuthenticationToken("user", "token");
+    SecurityContextHolder.getContext().setAuthentication(caller);
+    try {
+      printscriptManager.test(
+          "digest", assetDownload, "PRINTSCRIPT", "1.1", List.of(), List.of("1"));
+    } finally {
+      SecurityContextHolder.clearContext();
+    }
+
+    // The body is written later, on an event loop thread without a security context
+    ExecutorService eventLoop =
+        Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "reactor-http-nio-1"));
+    try {
+      String content = eventLoop.submit(() -> readPart(bodies.get(0), "content")).get();
+
+      assertEquals("println(1);", content);
+      assertTrue(downloadThread.get().startsWith("boundedElastic"));
+      assertEquals(caller, downloadAuthentication.get());
+    } finally {
+      eventLoop.shutdown();
+    }
+  }
+
+  private ResponseEntity<String> compile(String code) {
+    return printscriptManager.compile(
+        ContentDigest.sha256(code), () -> stream(code), CodeLanguage.PRINTSCRIPT, "1.1");
+  }
+
+  private InputStream stream(String code) {
+    return new ByteArrayInputStream(code.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @SuppressWarnings("unchecked")
+  private HttpEntity<?> part(Object body, String name) {
+    return ((MultiValueMap<String, HttpEntity<?>>) body).getFirst(name);
+  }
+
+  // Subscribes to a streamed part the way the connection would when sending it
+  @SuppressWarnings("unchecked")
+  private String readPart(Object body, String name) {
+    Publisher<DataBuffer> content = (Publisher<DataBuffer>) part(body, name).getBody();
+    DataBuffer joined = DataBufferUtils.join(content).block();
+    try {
+      return joined.toString(StandardCharsets.UTF_8);
+    } finally {
+      DataBufferUtils.release(joined);
+    }
+  }
+
+  private void serviceVersion(String version) {
+    doReturn(Mono.just(ResponseEntity.ok(version)))
+        .when(webClientUtility)
+        .getAsync(eq(VERSION_URL), any());
+    printscriptVersion.check();
+  }
+
+  private WebClientResponseException serverError(HttpStatus status, String body) {
+    return WebClientResponseException.create(
+        status.value(),
+        status.getReasonPhrase(),
+        new HttpHeaders(),
+        body.getBytes(StandardCharsets.UTF_8),
+        StandardCharsets.UTF_8);
+  }
+}